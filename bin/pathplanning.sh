@@ -1,8 +1,31 @@
 #!/bin/bash
-if [ $# -eq 3 ] 
+# If the path-planning daemon is running (java -jar PathPlanning.jar -daemon) the
+# session is served by it, keeping the maps loaded between executions
+DAEMON=/tmp/tuberia-pathplanning
+if [ -p $DAEMON ] && pgrep -f "PathPlanning.*-daemon" > /dev/null
+then
+	OUTPUT=$(mktemp -u /tmp/tuberia-pathplanning-XXXXXX)
+	mkfifo $OUTPUT
+	REQUEST=$(printf '%s\t' "$OUTPUT" "$PWD" "UP2TA_PROTOCOL=$UP2TA_PROTOCOL" "UP2TA_TRANSPORT=$UP2TA_TRANSPORT" "$@")
+	printf '%s\n' "$REQUEST" > $DAEMON
+	STATUS=255
+	while IFS= read -r LINE || [ -n "$LINE" ]
+	do
+		case "$LINE" in
+			"#EXIT "*) STATUS=${LINE#\#EXIT } ;;
+			*) printf '%s\n' "$LINE" ;;
+		esac
+	done < $OUTPUT
+	rm -f $OUTPUT
+	exit $STATUS
+fi
+if [ $# -eq 3 ]
 then
 	java -jar PathPlanning.jar $1 $2 $3
-else
+elif [ $# -eq 4 ]
+then
 	java -jar PathPlanning.jar $1 $2 $3 $4
+else
+	java -jar PathPlanning.jar $1 $2 $3 $4 $5
 fi
 exit
@@ -33,12 +33,55 @@
 #define NOMBRE_TUBERIA_AstarFF "/tmp/tuberia-astar-ff"
 #define T_PUNTO 10
 
+/*
+ * Protocolo binario (por defecto): tramas de tamano fijo en little-endian y sin
+ * confirmaciones. Peticion: opcion, id, x1, y1, x2, y2 (enteros de 32 bits).
+ * Respuesta: opcion, id, estado, sin uso (enteros de 32 bits) y valor (double).
+ * La primera peticion es MENSAJE_VERSION con la version en x1. MENSAJE_SALIR no
+ * tiene respuesta. Con la variable de entorno VARIABLE_PROTOCOLO=text se utiliza
+ * el protocolo de texto (puntos como cadenas, confirmaciones y valores con atof).
+ */
+#define VARIABLE_PROTOCOLO "UP2TA_PROTOCOL"
+#define MENSAJE_VERSION 'V'
+#define VERSION_PROTOCOLO 1
+#define T_TRAMA 24
+#define RESPUESTA_OK 0
+#define RESPUESTA_SIN_CAMINO 1
+
+/*
+ * Lote de peticiones (protocolo binario): una trama MENSAJE_LOTE con el numero de
+ * peticiones en x1 seguida de las tramas de las peticiones (heuristicas y costes, con
+ * su posicion en el lote como id). La respuesta es una trama MENSAJE_LOTE con el
+ * numero de respuestas seguida de las respuestas en el mismo orden.
+ */
+#define MENSAJE_LOTE 'B'
+#define MAX_LOTE 1024
+
+/*
+ * Transporte por memoria compartida (solo con el protocolo binario): con la variable
+ * de entorno VARIABLE_TRANSPORTE=shm las tramas se intercambian por dos buffers
+ * circulares de T_ANILLO bytes en el fichero NOMBRE_MEMORIA en lugar de por las
+ * tuberias. La cabecera (T_CABECERA bytes) contiene el pid de FF y los contadores
+ * de bytes escritos y leidos de cada buffer (enteros de 32 bits sin signo).
+ */
+#define VARIABLE_TRANSPORTE "UP2TA_TRANSPORT"
+#define NOMBRE_MEMORIA "/tmp/memoria-ff-astar"
+#define T_CABECERA 512
+#define T_ANILLO 65536
+#define T_MEMORIA (T_CABECERA + 2 * T_ANILLO)
+
 int abrirTuberiaLectura (const char *nombre, mode_t modo, int flags);
 int abrirTuberiaEscritura (const char *nombre, mode_t modo, int flags);
 int cerrarTuberia(int descr);
 size_t enviarTuberia(int fd, const void *buf, size_t count);
 size_t recibirTuberia(int fd, void *buf, size_t count);
 
+int transporteMemoria(void);
+int crearMemoria(const char *nombre);
+void enviarMemoria(const void *buf, size_t count);
+void recibirMemoria(void *buf, size_t count);
+void cerrarMemoria(void);
+
 int comparador_igual(double a, double b);
 int comparador_menor(double a, double b);
 int comparador_mayor(double a, double b);
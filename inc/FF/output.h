@@ -88,6 +88,7 @@ void print_op_name( int index );
 
 				double getHeuristica(int index);
 				double getCoste(int index);
+				void solicitarSucesores(int padre, int *ops, int num_ops);
 				void print_op_name_only_info(int index, char *tab);
 
 void print_plan( void );
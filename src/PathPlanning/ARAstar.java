@@ -0,0 +1,300 @@
+package PathPlanning;
+
+import java.util.Arrays;
+
+/**
+ * Implements the Anytime Repairing A* (ARA*) algorithm to search a path in a DEM.
+ * The algorithm is described in <i>ARA*: Anytime A* with Provable Bounds on
+ * Sub-Optimality. Maxim Likhachev et al., 2003</i>.
+ * A first path is found quickly using the heuristic inflated by a factor epsilon,
+ * and the path is improved decreasing epsilon while there is time available. Each
+ * improvement reuses the search information of the previous ones: only the nodes
+ * whose cost has been reduced (open and inconsistent nodes) are expanded again.
+ * The search finishes when the deadline is reached (only after finding a first path)
+ * or when the path is optimal. The cost of the path is not greater than the cost of
+ * the optimal path multiplied by the reached bound (with admissible heuristics).
+ */
+public class ARAstar extends SearchMethod {
+
+    /** Default initial inflation factor of the heuristic. */
+    public static final float DEFAULT_EPSILON = 2.5f;
+    /** Default decrement of the inflation factor after each improvement. */
+    public static final float DEFAULT_STEP = 0.5f;
+    /** Default time available to improve the path (milisec). */
+    public static final long DEFAULT_DEADLINE = 100;
+    /** Number of expansions between two checks of the deadline. */
+    private static final int CHECK_INTERVAL = 256;
+
+    /** Open nodes list, sorted by F (G plus the inflated heuristic). */
+    private OpenList open;
+    /** Inconsistent closed nodes whose cost has been reduced. */
+    private int incons[];
+    /** Number of inconsistent nodes. */
+    private int nincons;
+    /** Iteration in which each node was inserted in the inconsistent list. */
+    private int inconsit[];
+    /** Current iteration. */
+    private int iteration;
+    /** Initial inflation factor. */
+    private float epsilon0;
+    /** Decrement of the inflation factor. */
+    private float step;
+    /** Current inflation factor. */
+    private float epsilon;
+    /** Sub-optimality bound of the last path. */
+    private float bound;
+    /** Time available for the search (milisec), 0 without limit. */
+    private long deadline;
+    /** Wall-clock time in which the search must finish. */
+    private long endtime;
+
+    /**
+     * Constructor for ARAstar class.
+     * @param dem terrain info.
+     * @param init start node.
+     * @param end goal node.
+     * @param heur heuristic used for search.
+     * @param withz true for use Z values.
+     * @param withc true for use transversal costs.
+     */
+    public ARAstar(Map dem, Node init, Node end, short heur, boolean withz, boolean withc)
+    {
+        super("ARA*", dem, init, end, heur, withz, withc, false);
+        open = new OpenList(dem, state);
+        incons = new int[64];
+        inconsit = new int[dem.get_cols() * dem.get_rows()];
+        epsilon0 = DEFAULT_EPSILON;
+        step = DEFAULT_STEP;
+        deadline = DEFAULT_DEADLINE;
+    }
+
+    /**
+     * Change the inflation factors of the heuristic.
+     * @param initial initial inflation factor (greater or equal to 1).
+     * @param decrement decrement of the inflation factor after each path found (greater than 0).
+     */
+    public void set_epsilon(float initial, float decrement)
+    {
+        if(initial >= 1)
+            epsilon0 = initial;
+        if(decrement > 0)
+            step = decrement;
+    }
+
+    /**
+     * Change the time available to improve the path.
+     * @param millis time in milisec for each search, 0 to search until the optimal path is found.
+     */
+    public void set_deadline(long millis)
+    {
+        if(millis >= 0)
+            deadline = millis;
+    }
+
+    /**
+     * @return The sub-optimality bound of the last path found: its cost is not greater
+     * than the optimal cost multiplied by the bound (with admissible heuristics).
+     * Float.MAX_VALUE if the last search has not found a path.
+     */
+    public float get_bound()
+    {
+        return bound;
+    }
+
+    @Override
+    /**
+     * Clear internal data of the algorithm.
+     */
+    protected void clear_internal_data()
+    {
+        open.clear();
+        nincons = 0;
+        state.clear_closed();
+    }
+
+    /**
+     * Search a path using the ARA* algorithm.
+     * @return True if a path is found or false if no path found.
+     */
+    @Override
+    public boolean search()
+    {
+        bound = Float.MAX_VALUE;
+        if(!check_valid_data())
+            return false;
+
+        // Set initial state
+        int sid = index(start);
+        int gid = index(goal);
+        epsilon = epsilon0;
+        next_iteration();
+        state.set_parent(sid, sid);
+        state.set_f(sid, 0, epsilon * get_h(start, start, goal));
+        open.add(sid);
+
+        // Begin search
+        start_cpu_counter();
+        endtime = System.currentTimeMillis() + deadline;
+        if(!improve_path(gid, false))
+        {
+            clear_internal_data();
+            end_cpu_counter();
+            return false;
+        }
+        update_bound(gid);
+        while(bound > 1 && !timeout())
+        {
+            epsilon = Math.max(1, epsilon - step);
+            // Inconsistent nodes are open again and the F values are updated with the new factor
+            for(int i = 0; i < open.size(); i++)
+                add_incons(open.get(i));
+            open.clear();
+            for(int i = 0; i < nincons; i++)
+                reinsert(incons[i]);
+            nincons = 0;
+            next_iteration();
+            state.clear_closed();
+            if(!improve_path(gid, true))
+                break;
+            update_bound(gid);
+        }
+        clear_internal_data();
+        end_cpu_counter();
+        return true;
+    }
+
+    /**
+     * Expand nodes until the cost of the goal is not greater than the F value of the
+     * best open node.
+     * @param gid index of the goal.
+     * @param stoppable true to stop when the deadline is reached.
+     * @return False if the search has been stopped or there is no path.
+     */
+    private boolean improve_path(int gid, boolean stoppable)
+    {
+        int id, sid, nsucc;
+        float gsuc;
+        Node pos;
+        int count = 0;
+        while(!open.isEmpty() && state.get_g(gid) > state.get_f(open.peek()))
+        {
+            if(stoppable && ++count == CHECK_INTERVAL)
+            {
+                count = 0;
+                if(timeout())
+                    return false;
+            }
+            id = open.poll();
+            state.close(id);
+            expnodes++;
+            pos = map.get_node(id);
+
+            // Generate succesors for actual point
+            nsucc = map.get_succesors(id, succlist);
+            for(int i=0; i < nsucc; i++)
+            {
+                sid = succlist[i];
+                gsuc = get_g(pos, map.get_node(sid));
+                if(gsuc > 0 && gsuc < state.get_g(sid))
+                {
+                    state.set_parent(sid, id);
+                    if(state.is_closed(sid))
+                    {
+                        // Expanded again in the next iteration
+                        state.set_f(sid, gsuc, state.get_h(sid));
+                        add_incons(sid);
+                    }
+                    else
+                    {
+                        state.set_f(sid, gsuc, epsilon * get_h(pos, map.get_node(sid), goal));
+                        open.update(sid);
+                    }
+                }
+            }// End of succesor check
+        }
+        return state.get_parent(gid) != SearchState.NO_PARENT;
+    }
+
+    /**
+     * Compute the sub-optimality bound of the path: the minimum between the inflation
+     * factor and the cost of the path divided by the lowest G+H value of the open and
+     * inconsistent nodes (a lower bound of the optimal cost).
+     * @param gid index of the goal.
+     */
+    private void update_bound(int gid)
+    {
+        float lower = Float.MAX_VALUE;
+        float h;
+        int id;
+        for(int i = 0; i < open.size() + nincons; i++)
+        {
+            id = i < open.size()? open.get(i) : incons[i - open.size()];
+            h = get_h(map.get_node(id), map.get_node(id), goal);
+            lower = Math.min(lower, state.get_g(id) + h);
+        }
+        if(lower == Float.MAX_VALUE || lower <= 0)
+            bound = 1;
+        else
+            bound = Math.max(1, Math.min(epsilon, state.get_g(gid) / lower));
+    }
+
+    /**
+     * Insert a node in the open list with the current inflation factor.
+     * @param id index of the node.
+     */
+    private void reinsert(int id)
+    {
+        Node n = map.get_node(id);
+        state.set_f(id, state.get_g(id), epsilon * get_h(n, n, goal));
+        open.add(id);
+    }
+
+    /**
+     * Insert a node in the inconsistent list if it is not in the list.
+     * @param id index of the node.
+     */
+    private void add_incons(int id)
+    {
+        if(inconsit[id] == iteration)
+            return;
+        inconsit[id] = iteration;
+        if(nincons == incons.length)
+            incons = Arrays.copyOf(incons, nincons * 2);
+        incons[nincons++] = id;
+    }
+
+    /**
+     * Begin a new iteration, the inconsistent list is empty for the new iteration.
+     */
+    private void next_iteration()
+    {
+        iteration++;
+        if(iteration == Integer.MAX_VALUE)
+        {
+            Arrays.fill(inconsit, 0);
+            iteration = 1;
+        }
+    }
+
+    /**
+     * @return True if the deadline has been reached.
+     */
+    private boolean timeout()
+    {
+        return deadline > 0 && System.currentTimeMillis() >= endtime;
+    }
+
+    /**
+     * @return A string with the number of steps and cost of the path, and the
+     * sub-optimality bound reached if a path has been found (unknown if the
+     * heuristic is not admissible, see Heuristics.IsAdmissible).
+     */
+    @Override
+    public String path_info()
+    {
+        if(bound == Float.MAX_VALUE)
+            return super.path_info();
+        return super.path_info() + "#subopt-b: " + (Heuristics.IsAdmissible(heuristic)? String.valueOf(bound) : "unknown") + "\n";
+    }
+
+}
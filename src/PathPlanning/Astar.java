@@ -1,6 +1,6 @@
 package PathPlanning;
 
-import java.util.*;
+import java.util.ArrayList;
 
 /**
  * Implements the A* algorithm to search a path in a DEM.
@@ -9,9 +9,9 @@ import java.util.*;
 public class Astar extends SearchMethod {
     
     /** Open nodes list, sorted by F. */
-    private List<Node> open;
-    /** Closed nodes table. */
-    private Hashtable closed;
+    private OpenList open;
+    /** Weight of the heuristic (f = g + weight*h), 1 for the original algorithm. */
+    private float weight = 1;
     
     /**
      * Empty constructor.
@@ -35,8 +35,26 @@ public class Astar extends SearchMethod {
         super("A*", dem, init, end, heur, withz, withc, false);
         if(withz)
             this.heuristic = Heuristics.H_OCTILE_Z;
-	open = new ArrayList();
-        closed = new Hashtable();
+	open = new OpenList(dem, state);
+    }
+    
+    /**
+     * Change the weight of the heuristic (weighted A*). With an admissible heuristic
+     * the cost of the path is not greater than the optimal cost multiplied by the weight.
+     * @param w new weight (greater or equal to 1).
+     */
+    public void set_weight(float w)
+    {
+        if(w >= 1)
+            weight = w;
+    }
+
+    /**
+     * @return The weight of the heuristic.
+     */
+    public float get_weight()
+    {
+        return weight;
     }
     
     @Override
@@ -46,7 +64,7 @@ public class Astar extends SearchMethod {
     protected void clear_internal_data()
     {
 	open.clear();
-	closed.clear();
+	state.clear_closed();
     }
     
     /**
@@ -58,21 +76,22 @@ public class Astar extends SearchMethod {
     {
         if(!check_valid_data())
             return false;
-        ArrayList<Node> succlist = new ArrayList();
 
         // Set initial state
-	map.get_node(start.getX(), start.getY()).setParent(start);
-        map.get_node(start.getX(), start.getY()).setF(0, get_h(start,start, goal));
-        open.add(map.get_node(start.getX(), start.getY()));
+        int sid = index(start);
+	state.set_parent(sid, sid);
+        state.set_f(sid, 0, weight * get_h(start,start, goal));
+        open.add(sid);
         // Auxiliary variables
-	Node pos, aux;
+	Node pos;
+        int nsucc;
 
         // Begin search
         start_cpu_counter();
         while(!open.isEmpty())
         {            
-            pos = open.remove(0);
-            closed.put(pos.hashCode(), pos);
+            pos = map.get_node(open.poll());
+            state.close(index(pos));
             expnodes++;
 
             // If position is solution => finish
@@ -84,15 +103,12 @@ public class Astar extends SearchMethod {
             }
             
             // Generate succesors for actual point
-            succlist = map.get_succesors_without_obstacles(pos);
-            for(int i=0; i < succlist.size(); i++)
+            nsucc = map.get_succesors(index(pos), succlist);
+            for(int i=0; i < nsucc; i++)
             {
-                aux = succlist.get(i);
-                if(closed.get(aux.hashCode()) == null)
-                    update_vertex(pos, aux);
+                if(!state.is_closed(succlist[i]))
+                    update_vertex(pos, map.get_node(succlist[i]));
             }// End of succesor check
-            // Sort open list
-            Collections.sort(open);
             
         } // Open list is empty, no path found
         end_cpu_counter();
@@ -107,16 +123,14 @@ public class Astar extends SearchMethod {
     private void update_vertex(Node pos, Node succ)
     {
         //double hsuc = get_h(succ, goal);
-        float gsuc = get_g(pos, succ, true);
-	if(gsuc < succ.getG() && gsuc > 0)
+        float gsuc = get_g(pos, succ);
+        int id = index(succ);
+	if(gsuc < state.get_g(id) && gsuc > 0)
         {
-	    int x = succ.getX();
-	    int y = succ.getY();
-	    map.get_node(x, y).setF(gsuc, get_h(pos, succ, goal));
-	    map.get_node(x, y).setParent(pos);
-            // Remove succesor from open if is contained and insert succesors in open list
-            open.remove(map.get_node(x, y));
-	    open.add(map.get_node(x, y));
+	    state.set_f(id, gsuc, weight * get_h(pos, succ, goal));
+	    state.set_parent(id, index(pos));
+            // Insert succesor in open list or update its position if is contained
+            open.update(id);
         }
     }
 
@@ -129,27 +143,26 @@ public class Astar extends SearchMethod {
     {
         if(!check_valid_data())
             return false;
-        open = new ArrayList();
-        closed = new Hashtable();
-        ArrayList<Node> succ = new ArrayList();
+        clear_internal_data();
         
         // Set initial state
-	    map.get_node(start.getX(), start.getY()).setF(0, get_h(start, start, goal));
-        map.get_node(start.getX(), start.getY()).setParent(start);
-        open.add(map.get_node(start.getX(), start.getY()));
+        int sid = index(start);
+        state.set_f(sid, 0, weight * get_h(start, start, goal));
+        state.set_parent(sid, sid);
+        open.add(sid);
         Node pos;
         // Auxiliary variables
         float gsuc, hsuc;
-        int x, y;
+        int id, nsucc;
+        Node succ;
         boolean insert;
-        Node aux;
         
         // A* search
         start_cpu_counter();
         while(!open.isEmpty())
         {
-            pos = open.remove(0);
-            closed.put(pos.hashCode(), pos);
+            pos = map.get_node(open.poll());
+            state.close(index(pos));
             expnodes++;
             
             // If position is solution => finish
@@ -160,49 +173,41 @@ public class Astar extends SearchMethod {
             }
             
             // Generate succesors for actual point
-            succ = map.get_succesors_without_obstacles(pos);        
-            for(int i=0; i < succ.size(); i++)
+            nsucc = map.get_succesors(index(pos), succlist);
+            for(int i=0; i < nsucc; i++)
             {
                 insert = true;
-                x = succ.get(i).getX();
-                y = succ.get(i).getY();
-                gsuc =  get_g(pos, succ.get(i), true);
-                hsuc = get_h(pos, succ.get(i), goal);
+                id = succlist[i];
+                succ = map.get_node(id);
+                gsuc =  get_g(pos, succ);
+                hsuc = weight * get_h(pos, succ, goal);
 
                 // Search in closed
-                aux = (Node) closed.get(succ.get(i).hashCode());
-                if(aux != null)
+                if(state.is_closed(id))
                 {
                     // Delete node only if new node has less F value
-                    if(aux.getF() > (gsuc + hsuc))
-                        closed.remove(aux.hashCode());
+                    if(state.get_f(id) > (gsuc + hsuc))
+                        state.reopen(id);
                     else
                         insert = false;
                 }
                 // Search in open
-                else if(open.contains(map.get_node(x, y)))
+                else if(open.contains(id))
                 {
-                    int index = open.indexOf(map.get_node(x, y));
-                    if(index >= 0)
-                    {
-                        aux = open.get(index);
-                        // Delete node only if new node has less F value
-                        if(aux.getF() > (gsuc + hsuc))
-                            open.remove(aux);
-                        else
-                            insert = false;
-                    }
+                    // Delete node only if new node has less F value
+                    if(state.get_f(id) > (gsuc + hsuc))
+                        open.remove(id);
+                    else
+                        insert = false;
                 }
                 // Add node to the open list if not exist or is better than open/closed
                 if(insert)
                 {
-                    map.get_node(x, y).setParent(pos);
-                    map.get_node(x, y).setF(gsuc, hsuc);
-                    open.add(map.get_node(x, y));
+                    state.set_parent(id, index(pos));
+                    state.set_f(id, gsuc, hsuc);
+                    open.add(id);
                 }
             }// End of succesor check
-            // Sort open list
-            Collections.sort(open);
         } // Open list is empty, no path found
         return false;
     }
@@ -250,7 +255,7 @@ public class Astar extends SearchMethod {
     {      
         System.out.println("Open:");
         for(int i=0; i < open.size(); i++)
-            System.out.println("    " + open.get(i).toString() + "  P:"+open.get(i).getParent());
+            System.out.println("    " + node_info(open.get(i)) + "  P:"+node_info(state.get_parent(open.get(i))));
         System.out.println();
     }
     
@@ -259,12 +264,24 @@ public class Astar extends SearchMethod {
      */
     private void print_closed()
     {
-        Enumeration<Node> li;
-        li = closed.elements();
         System.out.println("Closed:");
-        for(int i=0; i < closed.size(); i++)
-            System.out.println("      "+li.nextElement().toString());
+        for(int i=0; i < map.get_cols()*map.get_rows(); i++)
+            if(state.is_closed(i))
+                System.out.println("      "+node_info(i));
         System.out.println();
     }
 
+    /**
+     * @return A string with the number of steps and cost of the path, and the
+     * sub-optimality bound when the heuristic is weighted (unknown if the heuristic
+     * is not admissible).
+     */
+    @Override
+    public String path_info()
+    {
+        if(weight <= 1)
+            return super.path_info();
+        return super.path_info() + "#subopt-b: " + (Heuristics.IsAdmissible(heuristic)? String.valueOf(weight) : "unknown") + "\n";
+    }
+
 }
@@ -0,0 +1,387 @@
+package PathPlanning;
+
+/**
+ * Implements a bidirectional A* algorithm to search a path in a DEM.
+ * A forward search from the start node and a backward search from the goal node
+ * are executed until they meet. Each search has its own state and open list, and
+ * the best path found through a node closed by both searches (or a move between a
+ * node expanded by one search and a node closed by the other one) is stored.
+ * Both searches use the average of the heuristics to its destination and from its
+ * origin, so they are consistent with each other and the search finishes when the sum
+ * of the lowest F values of both open lists is not less than the cost of the best path
+ * plus the heuristic from start to goal. With consistent heuristics the path is optimal.
+ * Both searches can be executed in two threads, sharing the map (read only). The
+ * meeting information is only accessed while holding a lock.
+ * Alpha heuristics depend on the search direction, so no heuristic is used with them.
+ */
+public class BiAstar extends SearchMethod {
+
+    /** Forward search (from start). */
+    private Frontier forward;
+    /** Backward search (from goal). */
+    private Frontier backward;
+    /** True to execute the backward search in its own thread. */
+    private boolean parallel;
+    /** Lock for the meeting information and the closed sets. */
+    private final Object lock = new Object();
+    /** Cost of the best path found. */
+    private volatile float mu;
+    /** Last node of the forward search in the best path. */
+    private int meetf;
+    /** First node of the backward search in the best path. */
+    private int meetb;
+    /** True when the search is finished. */
+    private volatile boolean finished;
+    /** Heuristic value from start to goal. */
+    private float hsg;
+
+    /**
+     * Constructor for BiAstar class, executing both searches in the same thread.
+     * @param dem terrain info.
+     * @param init start node.
+     * @param end goal node.
+     * @param heur heuristic used for search.
+     * @param withz true for use Z values.
+     * @param withc true for use transversal costs.
+     */
+    public BiAstar(Map dem, Node init, Node end, short heur, boolean withz, boolean withc)
+    {
+        super("Bidirectional A*", dem, init, end, heur, withz, withc, false);
+        if(withz)
+            this.heuristic = Heuristics.H_OCTILE_Z;
+        forward = new Frontier(state, true);
+        backward = new Frontier(new SearchState(dem), false);
+        forward.other = backward;
+        backward.other = forward;
+    }
+
+    /**
+     * Select if the backward search is executed in its own thread.
+     * @param twothreads true to use two threads, false to alternate both searches in one thread.
+     */
+    public void set_parallel(boolean twothreads)
+    {
+        parallel = twothreads;
+    }
+
+    /**
+     * @return True if the backward search is executed in its own thread.
+     */
+    public boolean is_parallel()
+    {
+        return parallel;
+    }
+
+    @Override
+    /**
+     * Clear internal data of the algorithm.
+     */
+    protected void clear_internal_data()
+    {
+        forward.clear();
+        backward.clear();
+    }
+
+    /**
+     * Search a path using the bidirectional A* algorithm.
+     * @return True if a path is found or false if no path found.
+     */
+    @Override
+    public boolean search()
+    {
+        if(!check_valid_data())
+            return false;
+
+        // Set initial state
+        mu = Float.MAX_VALUE;
+        meetf = meetb = -1;
+        finished = false;
+        hsg = heur(start, goal);
+        forward.init(start, goal);
+        backward.init(goal, start);
+
+        // Begin search
+        start_cpu_counter();
+        if(parallel)
+        {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    while(backward.expand());
+                }
+            });
+            worker.start();
+            while(forward.expand());
+            try{
+                worker.join();
+            }catch(InterruptedException ie){
+                Thread.currentThread().interrupt();
+            }
+        }
+        else
+        {
+            // Expand the search with less open nodes
+            boolean fw = true, bw = true;
+            while(fw && bw)
+            {
+                if(forward.open.size() <= backward.open.size())
+                    fw = forward.expand();
+                else
+                    bw = backward.expand();
+            }
+        }
+        expnodes = forward.expanded + backward.expanded;
+        if(meetf < 0)
+        {
+            end_cpu_counter();
+            return false;
+        }
+        join_path();
+        clear_internal_data();
+        end_cpu_counter();
+        return true;
+    }
+
+    /**
+     * Store the best path found if it is better than the current one.
+     * @param mf last node of the forward search.
+     * @param mb first node of the backward search.
+     * @param cost cost of the path.
+     */
+    private void meet(int mf, int mb, float cost)
+    {
+        if(cost < mu)
+        {
+            mu = cost;
+            meetf = mf;
+            meetb = mb;
+        }
+    }
+
+    /**
+     * Append the path of the backward search from the meeting node to the goal
+     * to the forward search, so the path can be recovered from the search state.
+     */
+    private void join_path()
+    {
+        int id = meetf;
+        int next = meetb;
+        int gid = index(goal);
+        while(true)
+        {
+            if(next != id)
+            {
+                state.set_f(next, state.get_g(id) + cost(id, next), 0);
+                state.set_parent(next, id);
+            }
+            if(next == gid)
+                break;
+            id = next;
+            next = backward.state.get_parent(id);
+        }
+    }
+
+    /**
+     * Get the cost of a move between two neighbour nodes.
+     * @param from index of the origin node.
+     * @param to index of the destination node.
+     * @return The length of the move.
+     */
+    private float cost(int from, int to)
+    {
+        Node a = map.get_node(from);
+        Node b = map.get_node(to);
+        return Geometry.LongHyp(b.getX() - a.getX(), b.getY() - a.getY());
+    }
+
+    /**
+     * Calculates the heuristics between two nodes (no heuristic for alpha heuristics).
+     * @param n node.
+     * @param dest destination of the search.
+     * @return The heuristic value.
+     */
+    private float heur(Node n, Node dest)
+    {
+        if(heuristic == Heuristics.H_ALPHA || heuristic == Heuristics.H_ALPHA2)
+            return 0;
+        return Heuristics.CalculateH(heuristic, n, dest);
+    }
+
+    /**
+     * Each one of the searches (forward or backward) of the algorithm.
+     */
+    private class Frontier {
+
+        /** Search information of the cells. */
+        SearchState state;
+        /** Open nodes list, sorted by F. */
+        OpenList open;
+        /** The other search. */
+        Frontier other;
+        /** True for the search from start to goal, false for the backward one. */
+        boolean forwards;
+        /** Origin of the search. */
+        Node root;
+        /** Destination of the search. */
+        Node dest;
+        /** F value of the last expanded node (lower bound of the F values of the open list). */
+        volatile float top;
+        /** Number of expanded nodes. */
+        int expanded;
+        /** Index of the neighbours of the expanded node. */
+        int neighbours[] = new int[Map.NSUCCESSORS];
+        /** Cost of the move between the expanded node and each neighbour. */
+        float costs[] = new float[Map.NSUCCESSORS];
+
+        /**
+         * Create a search.
+         * @param st search state used.
+         * @param fw true for the forward search, false for the backward one.
+         */
+        Frontier(SearchState st, boolean fw)
+        {
+            state = st;
+            forwards = fw;
+            open = new OpenList(map, st);
+        }
+
+        /**
+         * Clear the open list and the closed set.
+         */
+        void clear()
+        {
+            open.clear();
+            state.clear_closed();
+        }
+
+        /**
+         * Initialize the search.
+         * @param init initial node of this search.
+         * @param end destination node of this search.
+         */
+        void init(Node init, Node end)
+        {
+            if(!forwards)
+                state.reset();
+            clear();
+            root = init;
+            dest = end;
+            expanded = 0;
+            int id = index(root);
+            state.set_parent(id, id);
+            state.set_f(id, 0, get_h(root));
+            open.add(id);
+            top = state.get_f(id);
+        }
+
+        /**
+         * Average heuristics: half of the difference between the heuristic to the destination
+         * and the heuristic from the origin, plus half of the heuristic from start to goal
+         * to get values greater or equal to 0.
+         * @param n node.
+         * @return The heuristic value of the node for this search.
+         */
+        float get_h(Node n)
+        {
+            return Math.max(0, (heur(n, dest) - heur(n, root) + hsg) / 2);
+        }
+
+        /**
+         * Expand the best node of the open list.
+         * @return False if the search is finished, true otherwise.
+         */
+        boolean expand()
+        {
+            if(finished)
+                return false;
+            int id = open.poll();
+            if(id < 0)
+            {
+                // All reachable nodes are closed: the path exists if the destination was closed
+                int did = index(dest);
+                synchronized(lock)
+                {
+                    if(state.is_closed(did))
+                        meet(did, did, state.get_g(did));
+                    finished = true;
+                }
+                return false;
+            }
+            // No better path can be found
+            top = state.get_f(id);
+            if(top + other.top >= mu + hsg)
+            {
+                finished = true;
+                return false;
+            }
+            expanded++;
+            Node pos = map.get_node(id);
+            int n = get_neighbours(pos);
+            float g = state.get_g(id);
+            synchronized(lock)
+            {
+                state.close(id);
+                // Reaching the destination, the search has found a complete path
+                if(id == index(dest))
+                    meet(id, id, g);
+                if(other.state.is_closed(id))
+                    meet(id, id, g + other.state.get_g(id));
+                for(int i = 0; i < n; i++)
+                    if(other.state.is_closed(neighbours[i]))
+                    {
+                        if(forwards)
+                            meet(id, neighbours[i], g + costs[i] + other.state.get_g(neighbours[i]));
+                        else
+                            meet(neighbours[i], id, g + costs[i] + other.state.get_g(neighbours[i]));
+                    }
+            }
+            // Update the neighbours
+            float gsuc;
+            for(int i = 0; i < n; i++)
+            {
+                if(state.is_closed(neighbours[i]))
+                    continue;
+                gsuc = g + costs[i];
+                if(gsuc < state.get_g(neighbours[i]))
+                {
+                    state.set_f(neighbours[i], gsuc, get_h(map.get_node(neighbours[i])));
+                    state.set_parent(neighbours[i], id);
+                    open.update(neighbours[i]);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Get the neighbours of a node: the successors for the forward search and the
+         * predecessors (nodes with a move to the node) for the backward search.
+         * @param pos node.
+         * @return Number of neighbours stored in the neighbours and costs arrays.
+         */
+        int get_neighbours(Node pos)
+        {
+            int n = 0;
+            int x, y;
+            Node nb;
+            for(int d = 0; d < Map.NSUCCESSORS; d++)
+            {
+                x = pos.getX() + Map.DX[d];
+                y = pos.getY() + Map.DY[d];
+                if(forwards && !map.is_reachable(pos.getX(), pos.getY(), d))
+                    continue;
+                // The move from the predecessor has the opposite direction
+                if(!forwards && (!map.valid_pos(x, y) || !map.is_reachable(x, y, Map.NSUCCESSORS - 1 - d)))
+                    continue;
+                nb = map.get_node(x, y);
+                if(forwards? !Geometry.LineOfSightB(map, pos, nb) : !Geometry.LineOfSightB(map, nb, pos))
+                    continue;
+                neighbours[n] = map.get_index(x, y);
+                costs[n] = Geometry.LongHyp(Map.DX[d], Map.DY[d]);
+                n++;
+            }
+            return n;
+        }
+    }
+
+}
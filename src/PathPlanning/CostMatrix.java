@@ -0,0 +1,111 @@
+package PathPlanning;
+
+import java.util.Arrays;
+
+/**
+ * Costs of the shortest paths between every pair of a set of cells, computed in
+ * advance so they can be obtained without any search.
+ * Each row of the matrix is computed with a multi-target Dijkstra search from one
+ * cell (see Dijkstra.search(Node[])), without traversal costs like the cost queries.
+ * The rows are distributed between the workers of a QueryPool.
+ */
+public class CostMatrix {
+
+    /** Terrain info. */
+    private Map map;
+    /** Cells of the matrix (without repetitions). */
+    private Node cells[];
+    /** Row of each cell of the map in the matrix, -1 if the cell is not in the matrix. */
+    private int rowof[];
+    /** Cost from the cell of each row to the cell of each column, -1 if there is no path. */
+    private float costs[][];
+
+    /**
+     * Constructor for CostMatrix class. Invalid cells (outside the map) are ignored.
+     * @param dem terrain info.
+     * @param nodes cells of the matrix.
+     */
+    public CostMatrix(Map dem, Node nodes[])
+    {
+        map = dem;
+        rowof = new int[dem.get_cols() * dem.get_rows()];
+        Arrays.fill(rowof, -1);
+        cells = new Node[nodes.length];
+        int n = 0;
+        int id;
+        for(int i = 0; i < nodes.length; i++)
+        {
+            if(nodes[i] == null || !dem.valid_pos(nodes[i].getX(), nodes[i].getY()))
+                continue;
+            id = dem.get_index(nodes[i].getX(), nodes[i].getY());
+            if(rowof[id] >= 0)
+                continue;
+            rowof[id] = n;
+            cells[n++] = dem.get_node(nodes[i].getX(), nodes[i].getY());
+        }
+        cells = Arrays.copyOf(cells, n);
+    }
+
+    /**
+     * Compute the costs of the matrix with the workers of a pool, a multi-target cost
+     * query for each row (see QueryPool.Query(Node, Node[])).
+     * @param pool workers used, so no more threads or searches than for the queries are created.
+     */
+    public void compute(QueryPool pool)
+    {
+        costs = new float[cells.length][];
+        if(cells.length == 0)
+            return;
+        QueryPool.Query rows[] = new QueryPool.Query[cells.length];
+        for(int i = 0; i < cells.length; i++)
+            rows[i] = new QueryPool.Query(cells[i], cells);
+        pool.solve(rows);
+        for(int i = 0; i < cells.length; i++)
+            costs[i] = rows[i].get_costs();
+    }
+
+    /**
+     * @return The number of cells of the matrix.
+     */
+    public int size()
+    {
+        return cells.length;
+    }
+
+    /**
+     * Check if the cost between two cells is stored in the matrix.
+     * @param start origin cell.
+     * @param goal destination cell.
+     * @return True if both cells are in the computed matrix.
+     */
+    public boolean contains(Node start, Node goal)
+    {
+        return costs != null && row(start) >= 0 && row(goal) >= 0;
+    }
+
+    /**
+     * Get the cost of the shortest path between two cells of the matrix.
+     * @param start origin cell.
+     * @param goal destination cell.
+     * @return The cost of the path, -1 if there is no path or the cells are not in the matrix.
+     */
+    public float get_cost(Node start, Node goal)
+    {
+        if(!contains(start, goal))
+            return -1;
+        return costs[row(start)][row(goal)];
+    }
+
+    /**
+     * Get the row of a cell.
+     * @param n cell.
+     * @return The row of the cell or -1 if it is not in the matrix.
+     */
+    private int row(Node n)
+    {
+        if(!map.valid_pos(n.getX(), n.getY()))
+            return -1;
+        return rowof[map.get_index(n.getX(), n.getY())];
+    }
+
+}
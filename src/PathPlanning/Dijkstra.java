@@ -1,8 +1,7 @@
 package PathPlanning;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Implements the Dijkstra algorithm to search a path in a DEM.
@@ -10,11 +9,22 @@ import java.util.List;
  */
   public class Dijkstra extends SearchMethod {
    
-    /** Open nodes list, sorted by F. */
-    private List<Node> open;
+    /** Open nodes list, sorted by F. Used when the bucketed open list is disabled. */
+    private OpenList open;
+    /** Bucketed open list (radix heap) with the cell indexes of the reached nodes. */
+    private RadixHeap buckets;
+    /** Bucketed open list with exact costs for the multi-target searches, null if the costs of buckets are exact. */
+    private RadixHeap exactbuckets;
+    /** True to use the bucketed open list instead of the binary heap. */
+    private boolean usebuckets;
+    /** Mark of the destinations of a multi-target search, indexed by cell. */
+    private int targets[];
+    /** Current mark of the destinations. */
+    private int targetmark;
   
     /**
-     * Constructor. Create the open vector with all nodes.
+     * Constructor. Nodes are inserted in the open list when they are reached for
+     * the first time, using the bucketed open list with exact costs.
      * @param dem the DEM info.
      * @param init start node.
      * @param end goal node.
@@ -25,16 +35,25 @@ import java.util.List;
     public Dijkstra(Map dem, Node init, Node end, short heur, boolean withz, boolean withc)
     {
         super("Dijkstra", dem, init, end, heur, withz, withc, false);
-	    open = new ArrayList();
-        // Copy all nodes to the open table and set the cost to ~INF.
-        for(int j = 0; j < map.get_rows(); j++)
-            for(int i = 0; i < map.get_cols(); i++)
-                if(!map.get_node(i, j).isObstacle() && map.get_tcost(i, j) <= Map.MAX_COST)
-                {
-                    map.get_node(i, j).setF(0,Float.MAX_VALUE);
-                    map.get_node(i, j).setParent(null);
-                    open.add(map.get_node(i, j));
-                }
+	open = new OpenList(dem, state);
+        change_queue(true, 0);
+    }
+    
+    /**
+     * Select the open list used during search. Costs are bounded (each move costs at most
+     * Map.MAX_COST) and never decrease during expansion, so a bucketed open list can be used.
+     * @param usebuck true to use a bucketed open list (radix heap), false for a binary heap.
+     * @param qstep quantization step for the costs of the buckets: costs in the same step are
+     * extracted in any order and nodes improved after its expansion are expanded again.
+     * 0 to use the exact costs. The multi-target searches always use the exact costs
+     * (see search(Node[])).
+     */
+    public void change_queue(boolean usebuck, float qstep)
+    {
+        usebuckets = usebuck;
+        buckets = new RadixHeap(qstep);
+        exactbuckets = qstep > 0? new RadixHeap(0) : null;
+        open.clear();
     }
     
     @Override
@@ -43,14 +62,35 @@ import java.util.List;
      */
     protected void clear_internal_data()
     {
-	open.clear(); // References in open list lost in DEM clean (new nodes)
-	for(int j = 0; j < map.get_rows(); j++)
-            for(int i = 0; i < map.get_cols(); i++)
-            {
-                map.get_node(i, j).setF(0,Float.MAX_VALUE);
-                map.get_node(i, j).setParent(null);
-                open.add(map.get_node(i, j));
-            }
+	open.clear();
+        buckets.clear();
+    }
+    
+    /**
+     * Insert a cell in the open list, or update it if is contained.
+     * @param id index of the cell reached with a new cost.
+     */
+    private void push(int id)
+    {
+        if(usebuckets)
+            buckets.push(id, state.get_g(id));
+        else
+            open.update(id);
+    }
+    
+    /**
+     * Extract the best cell of the open list, ignoring outdated entries of the buckets.
+     * @return The index of the cell with less cost or -1 if the open list is empty.
+     */
+    private int pop()
+    {
+        if(!usebuckets)
+            return open.poll();
+        int id;
+        while((id = buckets.pop()) >= 0)
+            if(buckets.get_cost() <= state.get_g(id))
+                return id;
+        return -1;
     }
     
     /**
@@ -62,50 +102,126 @@ import java.util.List;
     {
         if(!check_valid_data())
             return false;
-        
+        expand(0);
+	    if(state.get_parent(index(goal)) != SearchState.NO_PARENT)
+	        return true;
+	    else
+	        return false;
+    }
+    
+    /**
+     * Search the costs from the initial node to several destinations with a single
+     * expansion, that finishes when all the destinations have been expanded. The
+     * search is restarted, so previous searches are discarded.
+     * The paths to the destinations can be obtained later with get_path(Node).
+     * The costs of a quantized open list (see change_queue) are not final when the nodes
+     * are extracted, so this search uses the exact costs to return the optimal ones.
+     * @param dests destination nodes.
+     * @return The cost to reach each destination (in the same order) or -1 if there is
+     * no path or the destination is invalid.
+     */
+    public float[] search(Node dests[])
+    {
+        float costs[] = new float[dests.length];
+        Arrays.fill(costs, -1);
+        if(start == null || !(map.valid_dem() || map.valid_cost_map()))
+            return costs;
+        RadixHeap quantized = buckets;
+        if(exactbuckets != null)
+            buckets = exactbuckets;
+        try{
+            search_targets(dests);
+        }finally{
+            buckets = quantized;
+        }
+        for(int i = 0; i < dests.length; i++)
+            if(dests[i] != null)
+                costs[i] = get_path_cost(dests[i]);
+        return costs;
+    }
+    
+    /**
+     * Mark the destinations of a multi-target search and expand until all of them
+     * have been extracted from the open list (see search(Node[])).
+     * @param dests destination nodes.
+     */
+    private void search_targets(Node dests[])
+    {
+        restart_search(start, goal);
+        if(targets == null)
+            targets = new int[map.get_cols() * map.get_rows()];
+        targetmark++;
+        if(targetmark == Integer.MAX_VALUE)
+        {
+            Arrays.fill(targets, 0);
+            targetmark = 1;
+        }
+        // Mark the destinations (repeated ones only once)
+        int remaining = 0;
+        int id;
+        for(int i = 0; i < dests.length; i++)
+            if(dests[i] != null && map.valid_pos(dests[i].getX(), dests[i].getY()))
+            {
+                id = index(dests[i]);
+                if(targets[id] != targetmark)
+                {
+                    targets[id] = targetmark;
+                    remaining++;
+                }
+            }
+        if(remaining > 0)
+            expand(remaining);
+    }
+    
+    /**
+     * Dijkstra expansion from the initial node.
+     * @param remaining number of marked destinations to expand before finish the search,
+     * 0 to expand all the reachable nodes.
+     */
+    private void expand(int remaining)
+    {
         // Set initial state
-        Node pos = map.get_node(start.getX(), start.getY());
-        pos.setF(0,0);
-        pos.setParent(map.get_node(pos.getX(), pos.getY()));
-        open.remove(pos);
-        open.add(0, pos);
+        int id = index(start);
+        state.set_f(id, 0, 0);
+        state.set_parent(id, id);
+        push(id);
         // Auxiliary variables
+        Node pos;
         float gsuc;
-        int x=0, y=0;
-        ArrayList<Node> succ = new ArrayList();
+        int sid, nsucc;
         
         // Dijkstra expansion
         start_cpu_counter();
-        while(!open.isEmpty())
+        while((id = pop()) >= 0)
         {
-            // Get better node
-            pos = open.remove(0);
+            // The cost of an extracted destination is final (exact costs)
+            if(remaining > 0 && targets[id] == targetmark)
+            {
+                targets[id] = 0;
+                if(--remaining == 0)
+                    break;
+            }
+            pos = map.get_node(id);
             expnodes++;
 
             // Generate succesors for actual point
-            succ = map.get_succesors_without_obstacles(pos);
-            for(int i=0; i < succ.size(); i++)
+            nsucc = map.get_succesors(id, succlist);
+            for(int i=0; i < nsucc; i++)
             {
-                x = succ.get(i).getX();
-                y = succ.get(i).getY();
-                gsuc = get_g(map.get_node(pos.getX(), pos.getY()), map.get_node(x, y), true);
+                sid = succlist[i];
+                gsuc = get_g(pos, map.get_node(sid));
                 // If new path to node is more expensive, not modify
-                if(gsuc > 0 && map.get_node(x, y).getG() > gsuc)
+                if(gsuc > 0 && state.get_g(sid) > gsuc)
                 {
-                    // Replace node data
-                    map.get_node(x, y).setParent(map.get_node(pos.getX(), pos.getY()));
-                    map.get_node(x, y).setF(gsuc,0);
+                    // Replace node data and insert it in open list
+                    state.set_parent(sid, id);
+                    state.set_f(sid, gsuc, 0);
+                    push(sid);
                 }
             }// End of succesor check
-            // Sort open list
-            Collections.sort(open);
         }
         // Search finish
         end_cpu_counter();
-	    if(map.get_node(goal.getX(), goal.getY()).getParent() != null)
-	        return true;
-	    else
-	        return false;
     }
     
     /**
@@ -129,20 +245,20 @@ import java.util.List;
     public float get_path_cost(Node dest)
     {
 	// If a node has not got a parent, this node is unreachable
-        if(map.valid_pos(dest.getX(), dest.getY()) && map.get_node(dest.getX(), dest.getY()).getParent() != null)
-            return map.get_node(dest.getX(), dest.getY()).getG();
+        if(map.valid_pos(dest.getX(), dest.getY()) && state.get_parent(index(dest)) != SearchState.NO_PARENT)
+            return state.get_g(index(dest));
         else
             return -1;
     }
     
     /**
-     * Print the open list.
+     * Print the open list (binary heap only).
      */
     private void print_open()
     {      
         System.out.println("Open:");
         for(int i=0; i < open.size(); i++)
-            System.out.println("    " + open.get(i).toString());
+            System.out.println("    " + node_info(open.get(i)));
         System.out.println();
     }
     
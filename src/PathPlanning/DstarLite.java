@@ -0,0 +1,373 @@
+package PathPlanning;
+
+import java.util.Arrays;
+
+/**
+ * Implements the D* Lite algorithm to search a path in a DEM and repair it when
+ * the map changes. The algorithm is described in <i>D* Lite. Sven Koenig and
+ * Maxim Likhachev, 2002</i>.
+ * The search is done backwards, from the goal to the start node, and its information
+ * is kept between calls to search. After changing the map (Map.set_obstacle, Map.set_tcost,
+ * Node.setObstacle or the cost grid) the modified cells are notified with update_cells,
+ * and the next search only expands the nodes whose cost to the goal has changed.
+ * The start node can be changed with set_start (for example, when the robot moves)
+ * without losing the search information. Changing the goal or calling restart_search
+ * begins a new search from scratch.
+ * Moves are the same than A*: 8 neighbours, only valid with line of sight.
+ */
+public class DstarLite extends SearchMethod {
+
+    /** Relative tolerance of the keys compared with the key of the start node (rounding errors). */
+    private static final float EPSILON = 1e-5f;
+    /** Cost to reach the goal from each cell. */
+    private float g[];
+    /** One step lookahead cost to reach the goal from each cell. */
+    private float rhs[];
+    /** Keys of the inconsistent cells. */
+    private KeyState keys;
+    /** Inconsistent cells, sorted by key. */
+    private OpenList open;
+    /** Key modifier, accumulates the heuristic between the successive start nodes. */
+    private float km;
+    /** Start node used to compute the keys. */
+    private Node last;
+    /** Index of the goal of the stored search, -1 if there is no search information. */
+    private int sgoal;
+    /** Auxiliary key values. */
+    private float k1, k2;
+
+    /**
+     * Constructor for DstarLite class.
+     * @param dem terrain info.
+     * @param init start node.
+     * @param end goal node.
+     * @param heur heuristic used for search.
+     * @param withz true for use Z values.
+     * @param withc true for use transversal costs.
+     */
+    public DstarLite(Map dem, Node init, Node end, short heur, boolean withz, boolean withc)
+    {
+        super("D* Lite", dem, init, end, heur, withz, withc, false);
+        int n = dem.get_cols() * dem.get_rows();
+        g = new float[n];
+        rhs = new float[n];
+        keys = new KeyState(dem);
+        open = new OpenList(dem, keys);
+        sgoal = -1;
+    }
+
+    @Override
+    /**
+     * Clear internal data of the algorithm. The next search begins from scratch.
+     */
+    protected void clear_internal_data()
+    {
+        sgoal = -1;
+    }
+
+    /**
+     * Initialize the search information for the actual goal.
+     */
+    private void initialize()
+    {
+        Arrays.fill(g, Float.MAX_VALUE);
+        Arrays.fill(rhs, Float.MAX_VALUE);
+        open.clear();
+        keys.reset();
+        km = 0;
+        last = start;
+        sgoal = index(goal);
+        rhs[sgoal] = 0;
+        update_key(sgoal);
+    }
+
+    /**
+     * Search a path using the D* Lite algorithm. The search information of the last
+     * search is reused if the goal has not changed.
+     * @return True if a path is found or false if no path found.
+     */
+    @Override
+    public boolean search()
+    {
+        if(!check_valid_data())
+            return false;
+
+        start_cpu_counter();
+        expnodes = 0;
+        if(sgoal != index(goal))
+            initialize();
+        else if(!last.equals(start))
+        {
+            // The keys of the open cells are lower bounds of the new keys
+            km += heur(last, start);
+            last = start;
+        }
+        compute_shortest_path();
+        boolean found = build_path();
+        end_cpu_counter();
+        return found;
+    }
+
+    /**
+     * Notify a change in the map (obstacle or traversal cost). The allowed moves around
+     * the cell are recomputed and the affected cells are updated for the next search.
+     * @param x x position of the modified node or cost cell.
+     * @param y y position of the modified node or cost cell.
+     */
+    public void update_cell(int x, int y)
+    {
+        map.update_moves(x, y);
+        if(sgoal < 0)
+            return;
+        // The same cells whose moves could change (see Map.update_moves)
+        for(int j = y-2; j <= y+2; j++)
+            for(int i = x-2; i <= x+2; i++)
+                if(map.valid_pos(i, j))
+                    update_rhs(map.get_index(i, j));
+    }
+
+    /**
+     * Notify a batch of changes in the map.
+     * @param x x positions of the modified nodes or cost cells.
+     * @param y y positions of the modified nodes or cost cells.
+     * @see #update_cell(int, int)
+     */
+    public void update_cells(int x[], int y[])
+    {
+        for(int i = 0; i < x.length && i < y.length; i++)
+            update_cell(x[i], y[i]);
+    }
+
+    /**
+     * Expand the inconsistent cells until the cost of the start node is known.
+     * Cells whose key is equal to the key of the start node are also expanded, so
+     * the keys are compared with a tolerance: the costs and the heuristics are
+     * accumulated in different order, and a cell of the path could be left inconsistent.
+     */
+    private void compute_shortest_path()
+    {
+        int sid = index(start);
+        int id, nid, x, y, d;
+        float gold, c;
+        Node pos;
+        calculate_key(sid);
+        while(!open.isEmpty() && (keys.less(open.peek(), k1 + k1 * EPSILON, k2) || rhs[sid] > g[sid]))
+        {
+            id = open.peek();
+            calculate_key(id);
+            if(keys.less(id, k1, k2))
+            {
+                // Outdated key (the start node has changed)
+                keys.set_key(id, k1, k2);
+                open.update(id);
+                calculate_key(sid);
+                continue;
+            }
+            open.poll();
+            expnodes++;
+            pos = map.get_node(id);
+            gold = g[id];
+            if(gold > rhs[id])
+                g[id] = rhs[id];
+            else
+            {
+                g[id] = Float.MAX_VALUE;
+                update_rhs(id);
+            }
+            // Update the predecessors (nodes with a move to the expanded node)
+            for(d = 0; d < Map.NSUCCESSORS; d++)
+            {
+                x = pos.getX() + Map.DX[d];
+                y = pos.getY() + Map.DY[d];
+                if(!map.valid_pos(x, y))
+                    continue;
+                nid = map.get_index(x, y);
+                // The move from the predecessor has the opposite direction
+                if((map.get_los_moves(nid) & (1 << (Map.NSUCCESSORS - 1 - d))) == 0 || nid == sgoal)
+                    continue;
+                c = Geometry.LongHyp(Map.DX[d], Map.DY[d]);
+                if(g[id] < gold)
+                {
+                    if(c + g[id] < rhs[nid])
+                    {
+                        rhs[nid] = c + g[id];
+                        update_key(nid);
+                    }
+                }
+                else if(rhs[nid] == c + gold)
+                    update_rhs(nid);
+            }
+            calculate_key(sid);
+        }
+    }
+
+    /**
+     * Compute the lookahead cost of a cell from its successors and update its position
+     * in the open list.
+     * @param id cell index.
+     */
+    private void update_rhs(int id)
+    {
+        if(id != sgoal)
+        {
+            int moves = map.get_los_moves(id);
+            float best = Float.MAX_VALUE;
+            float c;
+            Node pos = map.get_node(id);
+            for(int d = 0; moves != 0; d++, moves >>= 1)
+            {
+                if((moves & 1) == 0)
+                    continue;
+                c = g[map.get_index(pos.getX() + Map.DX[d], pos.getY() + Map.DY[d])];
+                if(c < Float.MAX_VALUE)
+                {
+                    c += Geometry.LongHyp(Map.DX[d], Map.DY[d]);
+                    if(c < best)
+                        best = c;
+                }
+            }
+            rhs[id] = best;
+        }
+        update_key(id);
+    }
+
+    /**
+     * Insert an inconsistent cell in the open list (or update its key) and remove
+     * a consistent one.
+     * @param id cell index.
+     */
+    private void update_key(int id)
+    {
+        if(g[id] != rhs[id])
+        {
+            calculate_key(id);
+            keys.set_key(id, k1, k2);
+            open.update(id);
+        }
+        else
+            open.remove(id);
+    }
+
+    /**
+     * Calculate the key of a cell, stored in k1 and k2.
+     * @param id cell index.
+     */
+    private void calculate_key(int id)
+    {
+        k2 = Math.min(g[id], rhs[id]);
+        k1 = k2 < Float.MAX_VALUE? k2 + heur(start, map.get_node(id)) + km : Float.MAX_VALUE;
+    }
+
+    /**
+     * Store the path from the start node to the goal in the search state, following
+     * the successors with less cost to the goal.
+     * @return True if there is a path.
+     */
+    private boolean build_path()
+    {
+        int id = index(start);
+        state.reset();
+        set_new_path(null);
+        if(rhs[id] == Float.MAX_VALUE)
+            return false;
+        state.set_parent(id, id);
+        state.set_f(id, 0, g[id]);
+        int moves, nid, next;
+        float c, best, len = 0, gacc = 0;
+        Node pos;
+        for(int steps = g.length; id != sgoal && steps > 0; steps--)
+        {
+            pos = map.get_node(id);
+            moves = map.get_los_moves(id);
+            next = -1;
+            best = Float.MAX_VALUE;
+            for(int d = 0; moves != 0; d++, moves >>= 1)
+            {
+                if((moves & 1) == 0)
+                    continue;
+                nid = map.get_index(pos.getX() + Map.DX[d], pos.getY() + Map.DY[d]);
+                if(g[nid] == Float.MAX_VALUE)
+                    continue;
+                c = g[nid] + Geometry.LongHyp(Map.DX[d], Map.DY[d]);
+                if(c < best)
+                {
+                    best = c;
+                    len = Geometry.LongHyp(Map.DX[d], Map.DY[d]);
+                    next = nid;
+                }
+            }
+            if(next < 0)
+                return false;
+            gacc += len;
+            state.set_parent(next, id);
+            state.set_f(next, gacc, g[next]);
+            id = next;
+        }
+        return id == sgoal;
+    }
+
+    /**
+     * Calculates the heuristics between two nodes (no heuristic for alpha heuristics).
+     * @param n node.
+     * @param dest destination node.
+     * @return The heuristic value.
+     */
+    private float heur(Node n, Node dest)
+    {
+        if(heuristic == Heuristics.H_ALPHA || heuristic == Heuristics.H_ALPHA2)
+            return 0;
+        return Heuristics.CalculateH(heuristic, n, dest);
+    }
+
+    /**
+     * Keys of the cells stored as terrain property (first key) and H (second key)
+     * values, sorted in lexicographic order.
+     */
+    private static class KeyState extends SearchState {
+
+        /**
+         * Create the keys for all the cells of a map.
+         * @param map map to be searched.
+         */
+        KeyState(Map map)
+        {
+            super(map);
+        }
+
+        /**
+         * Set the key of a cell.
+         * @param id cell index.
+         * @param first first value of the key.
+         * @param second second value of the key (less or equal to the first one).
+         */
+        void set_key(int id, float first, float second)
+        {
+            set_a(id, first);
+            set_f(id, 0, second);
+        }
+
+        /**
+         * Lexicographic comparison of the key of a cell with another key.
+         * @param id cell index.
+         * @param first first value of the other key.
+         * @param second second value of the other key.
+         * @return true if the key of the cell is less than the other key.
+         */
+        boolean less(int id, float first, float second)
+        {
+            float a = get_a(id);
+            return a < first || (a == first && get_h(id) < second);
+        }
+
+        @Override
+        public int compare(int i, int j)
+        {
+            float ai = get_a(i), aj = get_a(j);
+            if(ai != aj)
+                return ai < aj? -1 : 1;
+            float hi = get_h(i), hj = get_h(j);
+            return hi < hj? -1 : (hi == hj? 0 : 1);
+        }
+    }
+
+}
@@ -13,6 +13,8 @@ public abstract class FileManager {
     
     /** Allows to disable the load indicator. */
     public static boolean disableLoadIndicator = false;
+    /** Maximum size of each mapped region of the image of a DTM file. */
+    private static final long DTM_REGION = 1L << 26;
 
     /**
      * Read a DTM model from the given file.
@@ -51,6 +53,8 @@ public abstract class FileManager {
     
     /**
      * Read the Z values from a DTM file and store the information into a matrix.
+     * The image (little-endian floats) is mapped in memory by regions of at most
+     * DTM_REGION bytes, and the ignore value FF7FFFFB is stored as Float.MIN_VALUE.
      * @param file Relative path to the DTM file to be read.
      * @return Null if there is any problem or and DEM map otherwise.
     */
@@ -63,9 +67,7 @@ public abstract class FileManager {
             String keyword = "";
             String value = "";
             int recordBytes = 0;
-            int readOffset = 0;
-            float min = 0;
-            float max = 1;
+            long readOffset = 0;
             // Read file properties
             FileReader fr = new FileReader(abspath);
             BufferedReader zfile = new BufferedReader(fr);
@@ -91,48 +93,61 @@ public abstract class FileManager {
                     cols = Integer.parseInt(value);
                 else if(keyword.equals("RECORD_BYTES"))
                     recordBytes = Integer.parseInt(value);
-                else if(keyword.equals("VALID_MINIMUM"))
-                    min = Float.parseFloat(value);
-                else if(keyword.equals("VALID_MAXIMUM"))
-                    max = Float.parseFloat(value);
                 else if(keyword.equals("^IMAGE")) 
-                    readOffset = (Integer.parseInt(value)-1) * recordBytes;
+                {
+                    // Pointer in records or, with the unit, in bytes
+                    if(value.endsWith("<BYTES>"))
+                        readOffset = Long.parseLong(value.substring(0, value.indexOf('<')).trim()) - 1;
+                    else
+                        readOffset = (Long.parseLong(value)-1) * recordBytes;
+                }
             }//while
             
             try{
                 zfile.close();
             }catch(Exception e){}
-            // Read file data
+            // Read file data: the image is mapped by regions of whole rows and decoded in bulk
             Node temp[][] = new Node[cols][rows];
-            float z = 0;
-            float range = max - min;
-            float zant = -1;
-            byte[] buffer = new byte[4];
-            byte[] ignoreByte = hexStringToByteArray("FF7FFFFB");
-            float ignoreFloat = java.nio.ByteBuffer.wrap(ignoreByte).order(java.nio.ByteOrder.BIG_ENDIAN).getFloat();
-            FileInputStream zdata = new FileInputStream(abspath);
-            zdata.skip(readOffset);
-            if(!FileManager.disableLoadIndicator)
-                System.out.println();
-            
-            for(int j = 0; j < rows; j++)
-            {
-                for(int i = 0; i < cols; i++)
-                {
-                    zdata.read(buffer);
-                    z = java.nio.ByteBuffer.wrap(buffer).order(java.nio.ByteOrder.LITTLE_ENDIAN).getFloat();
-                    if(z == ignoreFloat)
-                        z = Float.MIN_VALUE;
-                    temp[i][j] = new Node(i, j, z);
-                    zant = z;
-                }
+            float z;
+            float row[] = new float[cols];
+            int ignore = java.nio.ByteBuffer.wrap(hexStringToByteArray("FF7FFFFB")).getInt();
+            int percent = -1;
+            java.nio.FloatBuffer data = null;
+            long offset = readOffset;
+            RandomAccessFile zdata = new RandomAccessFile(abspath, "r");
+            try{
+                java.nio.channels.FileChannel ch = zdata.getChannel();
+                if(cols < 1 || rows < 1 || ch.size() < readOffset + 4L * cols * rows)
+                    throw new IOException("truncated image in " + file);
                 if(!FileManager.disableLoadIndicator)
+                    System.out.println();
+                for(int j = 0; j < rows; j++)
                 {
-                    System.out.print("\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b");
-                    System.out.print("DTM Readed: "+(j*100/rows)+"%");
+                    if(data == null || !data.hasRemaining())
+                    {
+                        long n = Math.max(1, Math.min(rows - j, DTM_REGION / (4L * cols)));
+                        data = ch.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, offset, 4L * cols * n)
+                                .order(java.nio.ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+                        offset += 4L * cols * n;
+                    }
+                    data.get(row);
+                    for(int i = 0; i < cols; i++)
+                    {
+                        z = row[i];
+                        if(Float.floatToRawIntBits(z) == ignore)
+                            z = Float.MIN_VALUE;
+                        temp[i][j] = new Node(i, j, z);
+                    }
+                    if(!FileManager.disableLoadIndicator && j*100/rows != percent)
+                    {
+                        percent = j*100/rows;
+                        System.out.print("\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b");
+                        System.out.print("DTM Readed: "+percent+"%");
+                    }
                 }
+            }finally{
+                zdata.close();
             }
-            zdata.close();
             return temp;
             
         }catch(FileNotFoundException nf){
@@ -155,44 +170,26 @@ public abstract class FileManager {
         String abspath = new File(file).getAbsolutePath();
        
         try{
-            FileReader fr = new FileReader(abspath);
-            BufferedReader zfile = new BufferedReader(fr);
-
-            int cols, rows = 1;
-            // Read first row to get number of cols
-            StringTokenizer st = new StringTokenizer(zfile.readLine());
-            cols = st.countTokens();
-            while(zfile.readLine() != null)
-                rows++;
-            // Reset buffer reader and create the array
-            fr = new FileReader(abspath);
-            zfile = new BufferedReader(fr);
+            GridReader zfile = new GridReader(abspath, "DTM Readed: ");
+            float values[];
+            try{
+                values = zfile.read_grid(0, 0);
+            }finally{
+                zfile.close();
+            }
+            if(values == null)
+                return null;
+            int cols = zfile.get_cols(), rows = zfile.get_rows();
             Node temp[][] = new Node[cols][rows];
-
-            // Read file
-            if(!FileManager.disableLoadIndicator)
-                System.out.println();
             float z;
-            //for(int j = (rows-1); j >=0; j--)
             for(int j = 0; j < rows; j++)
-            {
-                st = new StringTokenizer(zfile.readLine());
-                for(int i = 0; i < cols; i++)
-                    if(st.hasMoreTokens())
-                    {
-                        z = Float.valueOf(st.nextToken());
-                        if(Float.isInfinite(z) || Float.isNaN(z) || z < Node.OBS)
-                            z = Float.MIN_VALUE;
-                        temp[i][j] = new Node(i, j, z);
-                    }
-                if(!FileManager.disableLoadIndicator)
+                for(int i = 0; i < zfile.get_length(j); i++)
                 {
-                    System.out.print("\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b");
-                    System.out.print("DTM Readed: "+(j*100/rows)+"%");
+                    z = values[j*cols + i];
+                    if(Float.isInfinite(z) || Float.isNaN(z) || z < Node.OBS)
+                        z = Float.MIN_VALUE;
+                    temp[i][j] = new Node(i, j, z);
                 }
-            }
-            // Close file and return array
-            zfile.close();
             return temp;
         
         }catch(FileNotFoundException nf){
@@ -211,58 +208,7 @@ public abstract class FileManager {
      * @return Null if there is any problem or the matrix cost otherwise.
     */
     public static float[][] ReadCfile(String file) {  
-        String abspath = new File(file).getAbsolutePath();
-        
-        try{
-            FileReader fr = new FileReader(abspath);
-            BufferedReader cfile = new BufferedReader(fr);
-
-            int cols, rows = 1;
-            // Read first row to get number of cols
-            StringTokenizer st = new StringTokenizer(cfile.readLine());
-            cols = st.countTokens();
-            while(cfile.readLine() != null)
-                rows++;
-            // Reset buffer reader and create the array
-            fr = new FileReader(abspath);
-            cfile = new BufferedReader(fr);
-            float temp[][] = new float[cols][rows];
-
-            // Read file
-            if(!FileManager.disableLoadIndicator)
-                System.out.println();
-            for(int j = 0; j < rows; j++)
-            {
-                st = new StringTokenizer(cfile.readLine());
-                for(int i = 0; i < cols; i++)
-                {
-                    temp[i][j] = Float.valueOf(st.nextToken());
-                    if(temp[i][j] == 0)
-                        temp[i][j] = 1; // Prevent 0 cost
-                }
-                if(!FileManager.disableLoadIndicator)
-                {
-                    System.out.print("\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b");
-                    System.out.print("Costmap readed: "+(j*100/rows)+"%");
-                }
-            }
-            if(!FileManager.disableLoadIndicator)
-                System.out.println();
-            // Close file and return array
-            cfile.close();
-            return temp;
-        
-        }catch(FileNotFoundException nf){
-            if(!FileManager.disableLoadIndicator)
-            System.out.println("\nCostmap file not found: " + file);
-        }catch(IOException ioe){
-            if(!FileManager.disableLoadIndicator)
-            System.out.println("\nInput/output error: " + ioe.toString());
-        }catch(Exception nf){
-            if(!FileManager.disableLoadIndicator)
-            System.out.println("\nException: " + nf.toString());
-        }
-        return null; // Fail to charge
+        return ReadCgrid(file, 0, 0);
     }
     
     /**
@@ -275,34 +221,45 @@ public abstract class FileManager {
     public static float[][] ReadCfile(String file, int cols, int rows) {  
         if(file == null || cols < 1 || rows < 1)
             return null;
+        return ReadCgrid(file, cols, rows);
+    }
+    
+    /**
+     * Read the transversal cost values file and store the information into a matrix.
+     * @param file Relative path to the file to be read.
+     * @param cols number of columns (x values), 0 to use the values of the first row.
+     * @param rows number of rows (y values), 0 to use all the rows of the file.
+     * @return Null if there is any problem or the matrix cost otherwise.
+    */
+    private static float[][] ReadCgrid(String file, int cols, int rows) {  
         String abspath = new File(file).getAbsolutePath();
         
         try{
-            FileReader fr = new FileReader(abspath);
-            BufferedReader cfile = new BufferedReader(fr);
-            float temp[][] = new float[cols][rows];
-            // Read file
+            GridReader cfile = new GridReader(abspath, "Costmap readed: ");
+            float values[];
+            try{
+                values = cfile.read_grid(cols, rows);
+            }finally{
+                cfile.close();
+            }
             if(!FileManager.disableLoadIndicator)
                 System.out.println();
+            if(values == null)
+                return null;
+            cols = cfile.get_cols();
+            rows = cfile.get_rows();
+            float temp[][] = new float[cols][rows];
             for(int j = 0; j < rows; j++)
             {
-                StringTokenizer st = new StringTokenizer(cfile.readLine());
+                if(cfile.get_length(j) < cols)
+                    throw new IOException("Missing costs in row " + (j+1));
                 for(int i = 0; i < cols; i++)
                 {
-                    temp[i][j] = Float.valueOf(st.nextToken());
+                    temp[i][j] = values[j*cols + i];
                     if(temp[i][j] == 0)
                         temp[i][j] = 1; // Prevent 0 cost
                 }
-                if(!FileManager.disableLoadIndicator)
-                {
-                    System.out.print("\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b");
-                    System.out.print("Costmap readed: "+(j*100/rows)+"%");
-                }
             }
-            if(!FileManager.disableLoadIndicator)
-                System.out.println();
-            // Close file and return array
-            cfile.close();
             return temp;
         
         }catch(FileNotFoundException nf){
@@ -631,7 +588,60 @@ public abstract class FileManager {
         }
         return null; // Fail to charge
     }
-   
+
+    /**
+     * Read the cells declared as objects in a PDDL problem file. The cells are the
+     * objects named C[x]_[y] of the :objects section (the format used by the task planner).
+     * @param file Relative path to the PDDL problem file.
+     * @return Null if there is any problem or an array with the x and y values of each cell otherwise.
+     */
+    public static int[][] ReadPDDLcells(String file)
+    {
+        try{
+            BufferedReader pfile = new BufferedReader(new FileReader(new File(file).getAbsolutePath()));
+            StringBuilder text = new StringBuilder();
+            String line;
+            while((line = pfile.readLine()) != null)
+            {
+                // Remove comments
+                if(line.indexOf(';') >= 0)
+                    line = line.substring(0, line.indexOf(';'));
+                text.append(line).append(' ');
+            }
+            pfile.close();
+            String problem = text.toString().toUpperCase();
+            int begin = problem.indexOf(":OBJECTS");
+            if(begin < 0)
+                return new int[0][2];
+            int end = problem.indexOf("(:", begin);
+            if(end < 0)
+                end = problem.length();
+            // Objects like C12_7
+            ArrayList<int[]> cells = new ArrayList<int[]>();
+            StringTokenizer st = new StringTokenizer(problem.substring(begin + 8, end), " \t()");
+            String token;
+            int del;
+            while(st.hasMoreTokens())
+            {
+                token = st.nextToken();
+                del = token.indexOf('_');
+                if(token.charAt(0) != 'C' || del < 2 || del == token.length()-1)
+                    continue;
+                try{
+                    cells.add(new int[]{Integer.parseInt(token.substring(1, del)), Integer.parseInt(token.substring(del+1))});
+                }catch(NumberFormatException nfe){
+                    // Not a cell
+                }
+            }
+            return cells.toArray(new int[cells.size()][]);
+        }catch(FileNotFoundException nf){
+            System.out.println("PDDL problem file not found: " + file);
+        }catch(IOException ioe){
+            System.out.println("Input/output error: " + ioe.toString());
+        }
+        return null; // Fail to charge
+    }
+
     /**
      * Create a new text file with the desired content.
      * @param filename filename for the output
@@ -651,4 +661,293 @@ public abstract class FileManager {
         }
     }
    
+    /**
+     * Reader of the grids of values of the ASCII files (a row in each line, with the values
+     * separated by blanks) in a single pass. The file is read through a large byte buffer,
+     * the values are parsed from the bytes without creating strings (see parse) and they
+     * are stored by rows in an array that grows as needed. Blank lines are skipped.
+     */
+    private static class GridReader {
+
+        /** Initial size of the buffer, it grows if a value does not fit. */
+        private static final int BUFFER = 1 << 20;
+        /** Maximum number of values of a grid. */
+        private static final long MAX_VALUES = Integer.MAX_VALUE - 8;
+        /** Powers of ten that are exact doubles. */
+        private static final double POW10[] = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+        /** File. */
+        private InputStream in;
+        /** Read bytes: the ones from mark to end are still required. */
+        private byte buf[];
+        private int pos, end, mark;
+        /** Size of the file and bytes read, for the load indicator. */
+        private long size, done;
+        /** Message of the load indicator. */
+        private String message;
+        private int percent = -1;
+        /** Values of the last line read. */
+        private float line[] = new float[64];
+        /** Columns and rows of the grid, and number of values of each row (up to cols). */
+        private int cols, rows;
+        private int lengths[];
+
+        /**
+         * Constructor for GridReader class.
+         * @param file path of the file.
+         * @param message message of the load indicator.
+         * @throws IOException if the file cannot be opened.
+         */
+        public GridReader(String file, String message) throws IOException
+        {
+            in = new FileInputStream(file);
+            size = Math.max(1, new File(file).length());
+            this.message = message;
+            buf = new byte[(int)Math.min(BUFFER, size + 1)];
+        }
+
+        /**
+         * Read the grid.
+         * @param ncols number of columns, 0 to use the number of values of the first row
+         * (the extra values of each row are ignored).
+         * @param nrows number of rows, 0 to read all the rows of the file.
+         * @return The values by rows (cols values each one) or null if there are no rows.
+         * @throws IOException if the file cannot be read or it has less than nrows rows.
+         * @throws NumberFormatException if a value is not a number.
+         */
+        public float[] read_grid(int ncols, int nrows) throws IOException
+        {
+            float values[] = null;
+            int n, capacity = 0;
+            cols = ncols;
+            rows = 0;
+            if(!FileManager.disableLoadIndicator)
+                System.out.println();
+            while((nrows == 0 || rows < nrows) && (n = next_line()) >= 0)
+            {
+                if(rows == 0)
+                {
+                    if(cols == 0)
+                        cols = n;
+                    // Estimation of the rows from the size of the first one
+                    capacity = nrows > 0? nrows : (int)Math.min(size / Math.max(1, done - (end - pos)) + 16, MAX_VALUES / cols);
+                    values = new float[cols * capacity];
+                    lengths = new int[capacity];
+                }
+                else if(rows == capacity)
+                {
+                    if(capacity >= MAX_VALUES / cols)
+                        throw new IOException("Too many values in the grid");
+                    capacity = (int)Math.min(capacity + (capacity >> 1) + 16, MAX_VALUES / cols);
+                    values = java.util.Arrays.copyOf(values, cols * capacity);
+                    lengths = java.util.Arrays.copyOf(lengths, capacity);
+                }
+                lengths[rows] = Math.min(n, cols);
+                System.arraycopy(line, 0, values, rows * cols, lengths[rows]);
+                rows++;
+                if(!FileManager.disableLoadIndicator && (done - (end - pos)) * 100 / size != percent)
+                {
+                    percent = (int)((done - (end - pos)) * 100 / size);
+                    System.out.print("\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b\b");
+                    System.out.print(message+percent+"%");
+                }
+            }
+            if(rows < nrows)
+                throw new IOException("Missing rows in the grid, " + rows + " of " + nrows);
+            return values;
+        }
+
+        /**
+         * @return The number of columns of the grid.
+         */
+        public int get_cols()
+        {
+            return cols;
+        }
+
+        /**
+         * @return The number of rows of the grid.
+         */
+        public int get_rows()
+        {
+            return rows;
+        }
+
+        /**
+         * @param row row of the grid.
+         * @return The number of values of the row (it may be less than the columns).
+         */
+        public int get_length(int row)
+        {
+            return lengths[row];
+        }
+
+        /**
+         * Close the file.
+         * @throws IOException if the file cannot be closed.
+         */
+        public void close() throws IOException
+        {
+            in.close();
+        }
+
+        /**
+         * Read the values of the next line that is not blank.
+         * @return The number of values (stored in line) or -1 at the end of the file.
+         * @throws IOException if the file cannot be read.
+         */
+        private int next_line() throws IOException
+        {
+            int n = 0, p = pos, e = end;
+            byte b[] = buf, c;
+            // The position is kept in p (pos is updated before filling the buffer)
+            while(true)
+            {
+                if(p == e)
+                {
+                    pos = mark = p;
+                    if(!fill())
+                        return n > 0? n : -1;
+                    p = pos;
+                    e = end;
+                    b = buf;
+                }
+                c = b[p];
+                if(c == '\n' || c == '\r')
+                {
+                    p++;
+                    if(n > 0)
+                    {
+                        pos = p;
+                        return n;
+                    }
+                }
+                else if(c == ' ' || c == '\t' || c == '\f')
+                    p++;
+                else
+                {
+                    // Value: to the next blank
+                    mark = p;
+                    while(true)
+                    {
+                        if(p == e)
+                        {
+                            pos = p;
+                            if(!fill())
+                                break;
+                            p = pos;
+                            e = end;
+                            b = buf;
+                        }
+                        c = b[p];
+                        if(c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f')
+                            break;
+                        p++;
+                    }
+                    if(n == line.length)
+                        line = java.util.Arrays.copyOf(line, n * 2);
+                    line[n++] = parse(mark, p);
+                }
+            }
+        }
+
+        /**
+         * Read more bytes, keeping the ones from mark (the buffer grows if they fill it).
+         * @return False at the end of the file.
+         * @throws IOException if the file cannot be read.
+         */
+        private boolean fill() throws IOException
+        {
+            if(mark > 0)
+            {
+                System.arraycopy(buf, mark, buf, 0, end - mark);
+                pos -= mark;
+                end -= mark;
+                mark = 0;
+            }
+            if(end == buf.length)
+                buf = java.util.Arrays.copyOf(buf, buf.length * 2);
+            int n = in.read(buf, end, buf.length - end);
+            if(n <= 0)
+                return false;
+            end += n;
+            done += n;
+            return true;
+        }
+
+        /**
+         * Parse a value with the same result as Float.valueOf. The decimal numbers with
+         * up to 17 significant digits and exponents up to 22 are parsed from the bytes:
+         * the double value is correctly rounded (exact integer and power of ten) and it is
+         * converted to float unless it is halfway between two floats (double rounding).
+         * Other values are parsed by Float.valueOf.
+         * @param start first byte of the value.
+         * @param stop byte after the value.
+         * @return The value.
+         * @throws NumberFormatException if it is not a number.
+         */
+        private float parse(int start, int stop)
+        {
+            int p = start, digits = 0, exp = 0, e = 0, d;
+            long m = 0;
+            boolean neg = false, valid = false, expneg = false;
+            if(buf[p] == '-' || buf[p] == '+')
+                neg = buf[p++] == '-';
+            for(; p < stop && (d = buf[p] - '0') >= 0 && d <= 9; p++)
+            {
+                valid = true;
+                if(m == 0 && d == 0)
+                    continue;
+                if(++digits > 17)
+                    return slow_parse(start, stop);
+                m = m * 10 + d;
+            }
+            if(p < stop && buf[p] == '.')
+                for(p++; p < stop && (d = buf[p] - '0') >= 0 && d <= 9; p++)
+                {
+                    valid = true;
+                    exp--;
+                    if(m == 0 && d == 0)
+                        continue;
+                    if(++digits > 17)
+                        return slow_parse(start, stop);
+                    m = m * 10 + d;
+                }
+            if(valid && p < stop && (buf[p] == 'e' || buf[p] == 'E'))
+            {
+                if(++p < stop && (buf[p] == '-' || buf[p] == '+'))
+                    expneg = buf[p++] == '-';
+                valid = p < stop;
+                for(; p < stop && (d = buf[p] - '0') >= 0 && d <= 9; p++)
+                    if(e < 1000)
+                        e = e * 10 + d;
+                exp += expneg? -e : e;
+            }
+            if(!valid || p != stop)
+                return slow_parse(start, stop);
+            if(m == 0)
+                return neg? -0.0f : 0.0f;
+            if(m > (1L << 53) || exp < -22 || exp > 22)
+                return slow_parse(start, stop);
+            double v = exp >= 0? m * POW10[exp] : m / POW10[-exp];
+            if((Double.doubleToRawLongBits(v) & 0x1FFFFFFFL) == 0x10000000L)
+                return slow_parse(start, stop);
+            return neg? -(float)v : (float)v;
+        }
+
+        /**
+         * Parse a value with Float.valueOf.
+         * @param start first byte of the value.
+         * @param stop byte after the value.
+         * @return The value.
+         * @throws NumberFormatException if it is not a number.
+         */
+        private float slow_parse(int start, int stop)
+        {
+            return Float.valueOf(new String(buf, start, stop - start, java.nio.charset.StandardCharsets.ISO_8859_1));
+        }
+
+    }
+
 }
@@ -0,0 +1,748 @@
+package PathPlanning;
+
+import java.util.Arrays;
+
+/**
+ * Implements the Hierarchical Path-Finding A* (HPA*) algorithm to search a path in a DEM.
+ * The algorithm is described in <i>Near Optimal Hierarchical Path-Finding. Adi Botea
+ * et al., 2004</i>.
+ * The map is divided in square clusters. The transitions between adjacent clusters
+ * (entrances) are the nodes of an abstract graph, whose edges are the moves between
+ * both sides of an entrance and the costs between the transitions of a cluster,
+ * computed inside the cluster when the abstraction is built. A query inserts the
+ * start and goal nodes in the abstract graph, searches the abstract path with A* and
+ * refines each abstract edge with a search limited to its cluster. If the abstract
+ * graph has no path, a search over the whole map is done, so a path is always found
+ * if it exists. The path is near optimal: it can be longer than the A* path.
+ * The moves are the same than A* (8 neighbours with line of sight), so the abstraction
+ * is valid for corner-node and center-node maps. The entrances only use the straight
+ * moves across the borders: the diagonal moves between nodes of adjacent clusters are
+ * not in the abstract graph, so the abstract paths do not cross the corners of the
+ * clusters (the refined paths can be longer, but not lost: they use other entrances
+ * or the search over the whole map). When the map changes (the allowed moves
+ * are updated by the map, see Map.get_changes), only the clusters around the changed
+ * positions are checked, and the ones whose moves have changed and their neighbours are
+ * rebuilt before the next search.
+ */
+public class HPAstar extends SearchMethod {
+
+    /** Default number of nodes of the side of a cluster. */
+    public static final int DEFAULT_CLUSTER_SIZE = 16;
+    /** Minimum length of an entrance to place a transition at each end instead of one in the middle. */
+    private static final int LONG_ENTRANCE = 6;
+    /** Length of each move direction. */
+    private static final float STEP[] = new float[Map.NSUCCESSORS];
+    static {
+        for(int d = 0; d < Map.NSUCCESSORS; d++)
+            STEP[d] = Geometry.LongHyp(Map.DX[d], Map.DY[d]);
+    }
+
+    /** Number of nodes of the side of a cluster. */
+    private int csize;
+    /** Number of columns of clusters. */
+    private int ccols;
+    /** Number of rows of clusters. */
+    private int crows;
+    /** Clusters of the map, by rows. */
+    private Cluster clusters[];
+    /** Version of the map and marks of the abstraction, shared by the searches that use it. */
+    private Abstraction graph;
+    /** Search information of the searches inside a cluster. */
+    private SearchState local;
+    /** Open list of the searches inside a cluster. */
+    private OpenList lopen;
+    /** Open list of the abstract search (uses the search state of the algorithm). */
+    private OpenList open;
+    /** Limits of the search inside a cluster. */
+    private int lx0, ly0, lx1, ly1;
+    /** Auxiliary buffer for the transitions and the refined paths. */
+    private int buffer[] = new int[64];
+
+    /**
+     * Constructor for HPAstar class with the default cluster size.
+     * @param dem terrain info.
+     * @param init start node.
+     * @param end goal node.
+     * @param heur heuristic used for search.
+     * @param withz true for use Z values.
+     * @param withc true for use transversal costs.
+     */
+    public HPAstar(Map dem, Node init, Node end, short heur, boolean withz, boolean withc)
+    {
+        this(dem, init, end, heur, withz, withc, DEFAULT_CLUSTER_SIZE);
+    }
+
+    /**
+     * Constructor for HPAstar class.
+     * @param dem terrain info.
+     * @param init start node.
+     * @param end goal node.
+     * @param heur heuristic used for search.
+     * @param withz true for use Z values.
+     * @param withc true for use transversal costs.
+     * @param size number of nodes of the side of a cluster (at least 2).
+     */
+    public HPAstar(Map dem, Node init, Node end, short heur, boolean withz, boolean withc, int size)
+    {
+        super("HPA*", dem, init, end, heur, withz, withc, false);
+        csize = Math.max(2, size);
+        local = new SearchState(dem);
+        lopen = new OpenList(dem, local);
+        open = new OpenList(dem, state);
+        preprocess();
+    }
+
+    /**
+     * Constructor for HPAstar class that uses the abstract graph of another search of
+     * the same map, so the graph is built once for several searches (e.g. one for each
+     * thread). The searches can run at the same time while the map does not change, and
+     * the first one that finds the map changed refreshes the graph for all of them.
+     * @param dem terrain info.
+     * @param init start node.
+     * @param end goal node.
+     * @param heur heuristic used for search.
+     * @param withz true for use Z values.
+     * @param withc true for use transversal costs.
+     * @param shared search whose abstract graph is used (a new one is built if its map is other).
+     */
+    public HPAstar(Map dem, Node init, Node end, short heur, boolean withz, boolean withc, HPAstar shared)
+    {
+        super("HPA*", dem, init, end, heur, withz, withc, false);
+        csize = shared.csize;
+        local = new SearchState(dem);
+        lopen = new OpenList(dem, local);
+        open = new OpenList(dem, state);
+        if(shared.map != dem)
+        {
+            preprocess();
+            return;
+        }
+        ccols = shared.ccols;
+        crows = shared.crows;
+        clusters = shared.clusters;
+        graph = shared.graph;
+    }
+
+    @Override
+    /**
+     * Clear internal data of the algorithm.
+     */
+    protected void clear_internal_data()
+    {
+        open.clear();
+        state.clear_closed();
+    }
+
+    /**
+     * Build the abstract graph of the whole map. The new graph is not shared with the
+     * searches that used the previous one.
+     */
+    public final void preprocess()
+    {
+        ccols = (map.get_cols() + csize - 1) / csize;
+        crows = (map.get_rows() + csize - 1) / csize;
+        clusters = new Cluster[ccols * crows];
+        graph = new Abstraction();
+        graph.mark = new int[clusters.length];
+        Cluster c;
+        for(int cy = 0; cy < crows; cy++)
+            for(int cx = 0; cx < ccols; cx++)
+            {
+                c = new Cluster();
+                c.x0 = cx * csize;
+                c.y0 = cy * csize;
+                c.x1 = Math.min(map.get_cols(), c.x0 + csize) - 1;
+                c.y1 = Math.min(map.get_rows(), c.y0 + csize) - 1;
+                clusters[cy * ccols + cx] = c;
+            }
+        graph.version = map.get_version();
+        for(int i = 0; i < clusters.length; i++)
+        {
+            clusters[i].signature = signature(clusters[i]);
+            build_entrances(i);
+        }
+        for(int i = 0; i < clusters.length; i++)
+            build_graph(clusters[i]);
+    }
+
+    /**
+     * Rebuild the clusters affected by the changes of the map since the abstraction
+     * was built: the clusters whose allowed moves have changed and their neighbours,
+     * which share the entrances with them. Only the clusters around the changed
+     * positions are checked, unless the changes are unknown (see Map.get_changes).
+     * The map must not change while a search that shares the graph is running.
+     */
+    public void refresh()
+    {
+        if(graph.version == map.get_version())
+            return;
+        synchronized(graph)
+        {
+            // Another search that shares the graph could have refreshed it
+            if(graph.version == map.get_version())
+                return;
+            int changes[] = map.get_changes(graph.version);
+            int version = map.get_version();
+            graph.curmark++;
+            // Entrances of the modified clusters
+            if(changes == null)
+                for(int i = 0; i < clusters.length; i++)
+                    check_cluster(i);
+            else
+            {
+                int x, y, cx0, cy0, cx1, cy1;
+                for(int k = 0; k < changes.length; k++)
+                {
+                    x = changes[k] % map.get_cols();
+                    y = changes[k] / map.get_cols();
+                    // Clusters of the nodes whose moves could change
+                    cx0 = Math.max(0, x - 2) / csize;
+                    cy0 = Math.max(0, y - 2) / csize;
+                    cx1 = Math.min(map.get_cols() - 1, x + 2) / csize;
+                    cy1 = Math.min(map.get_rows() - 1, y + 2) / csize;
+                    for(int cy = cy0; cy <= cy1; cy++)
+                        for(int cx = cx0; cx <= cx1; cx++)
+                            if(clusters[cy * ccols + cx].checked != graph.curmark)
+                            {
+                                clusters[cy * ccols + cx].checked = graph.curmark;
+                                check_cluster(cy * ccols + cx);
+                            }
+                }
+            }
+            // Transitions and costs of the clusters with modified entrances
+            for(int i = 0; i < clusters.length; i++)
+                if(graph.mark[i] == graph.curmark)
+                    build_graph(clusters[i]);
+            // The other searches use the graph once the new version is visible
+            graph.version = version;
+        }
+    }
+
+    /**
+     * Rebuild the entrances of a cluster and its neighbours if its allowed moves have
+     * changed, marking them to rebuild their graph.
+     * @param i index of the cluster.
+     */
+    private void check_cluster(int i)
+    {
+        long sign = signature(clusters[i]);
+        if(sign == clusters[i].signature)
+            return;
+        clusters[i].signature = sign;
+        int cx = i % ccols;
+        int cy = i / ccols;
+        build_entrances(i);
+        graph.mark[i] = graph.curmark;
+        if(cx > 0)
+        {
+            build_entrances(i - 1);
+            graph.mark[i - 1] = graph.curmark;
+        }
+        if(cy > 0)
+        {
+            build_entrances(i - ccols);
+            graph.mark[i - ccols] = graph.curmark;
+        }
+        if(cx < ccols - 1)
+            graph.mark[i + 1] = graph.curmark;
+        if(cy < crows - 1)
+            graph.mark[i + ccols] = graph.curmark;
+    }
+
+    /**
+     * Search a path using the HPA* algorithm.
+     * @return True if a path is found or false if no path found.
+     */
+    @Override
+    public boolean search()
+    {
+        if(!check_valid_data())
+            return false;
+
+        start_cpu_counter();
+        refresh();
+        int sid = index(start);
+        int gid = index(goal);
+        Cluster cs = cluster_of(sid);
+        Cluster cg = cluster_of(gid);
+        // Insert start and goal in the abstract graph
+        float sdist[] = new float[cs.nodes.length];
+        float gdist[] = new float[cg.nodes.length];
+        set_bounds(cs);
+        expnodes += local_search(sid, -1, false);
+        for(int i = 0; i < sdist.length; i++)
+            sdist[i] = local.get_g(cs.nodes[i]);
+        float direct = cs == cg? local.get_g(gid) : Float.MAX_VALUE;
+        set_bounds(cg);
+        expnodes += local_search(gid, -1, true);
+        for(int i = 0; i < gdist.length; i++)
+            gdist[i] = local.get_g(cg.nodes[i]);
+
+        // Abstract search
+        state.set_parent(sid, sid);
+        state.set_f(sid, 0, heur(start, goal));
+        open.add(sid);
+        int id, k, n;
+        float g;
+        Cluster c;
+        boolean found = false;
+        while((id = open.poll()) >= 0)
+        {
+            state.close(id);
+            expnodes++;
+            if(id == gid)
+            {
+                found = true;
+                break;
+            }
+            g = state.get_g(id);
+            c = cluster_of(id);
+            if(id == sid)
+            {
+                for(int i = 0; i < sdist.length; i++)
+                    relax(id, cs.nodes[i], sdist[i]);
+                relax(id, gid, direct);
+            }
+            n = node_of(c, id);
+            if(n < 0)
+                continue;
+            k = c.nodes.length;
+            for(int j = 0; j < k; j++)
+                if(j != n)
+                    relax(id, c.nodes[j], g + c.cost[n * k + j]);
+            for(int j = 2 * n; j < 2 * n + 2; j++)
+                if(c.partner[j] >= 0)
+                    relax(id, c.partner[j], g + STEP[get_direction(id, c.partner[j])]);
+            if(c == cg)
+                relax(id, gid, g + gdist[n]);
+        }
+        clear_internal_data();
+        if(found)
+            refine(sid, gid);
+        else
+        {
+            // The abstract graph has no path, search in the whole map
+            lx0 = ly0 = 0;
+            lx1 = map.get_cols() - 1;
+            ly1 = map.get_rows() - 1;
+            expnodes += local_search(sid, gid, false);
+            found = local.get_parent(gid) != SearchState.NO_PARENT;
+            state.reset();
+            state.set_parent(sid, sid);
+            state.set_f(sid, 0, 0);
+            if(found)
+                append_local(sid, gid);
+        }
+        end_cpu_counter();
+        return found;
+    }
+
+    /**
+     * Update a node of the abstract graph reached from another node.
+     * @param from index of the expanded node.
+     * @param to index of the reached node.
+     * @param g cost to reach the node.
+     */
+    private void relax(int from, int to, float g)
+    {
+        if(g >= Float.MAX_VALUE || state.is_closed(to) || g >= state.get_g(to))
+            return;
+        state.set_f(to, g, heur(map.get_node(to), goal));
+        state.set_parent(to, from);
+        open.update(to);
+    }
+
+    /**
+     * Replace the abstract path stored in the search state by the path between each
+     * pair of nodes, searched inside its cluster.
+     * @param sid index of the start node.
+     * @param gid index of the goal node.
+     */
+    private void refine(int sid, int gid)
+    {
+        // Abstract path from start to goal
+        int n = 0;
+        int id = gid;
+        while(true)
+        {
+            buffer = add(buffer, n++, id);
+            if(id == sid)
+                break;
+            id = state.get_parent(id);
+        }
+        int apath[] = new int[n];
+        for(int i = 0; i < n; i++)
+            apath[i] = buffer[n - 1 - i];
+        state.reset();
+        state.set_parent(sid, sid);
+        state.set_f(sid, 0, 0);
+        Cluster c;
+        for(int i = 1; i < n; i++)
+        {
+            c = cluster_of(apath[i - 1]);
+            if(c != cluster_of(apath[i]))
+                append(apath[i - 1], apath[i]); // Move between both sides of an entrance
+            else
+            {
+                set_bounds(c);
+                expnodes += local_search(apath[i - 1], apath[i], false);
+                append_local(apath[i - 1], apath[i]);
+            }
+        }
+    }
+
+    /**
+     * Append the path found by the last search inside a cluster to the path stored
+     * in the search state.
+     * @param from index of the first node of the local path.
+     * @param to index of the last node of the local path.
+     */
+    private void append_local(int from, int to)
+    {
+        int n = 0;
+        for(int id = to; id != from; id = local.get_parent(id))
+            buffer = add(buffer, n++, id);
+        int prev = from;
+        for(int i = n - 1; i >= 0; i--)
+        {
+            append(prev, buffer[i]);
+            prev = buffer[i];
+        }
+    }
+
+    /**
+     * Append a move to the path stored in the search state.
+     * @param from index of the last node of the path.
+     * @param to index of the new node.
+     */
+    private void append(int from, int to)
+    {
+        if(state.get_parent(to) != SearchState.NO_PARENT)
+            return; // The path returns to a node of the path: the loop is removed
+        state.set_f(to, state.get_g(from) + STEP[get_direction(from, to)], 0);
+        state.set_parent(to, from);
+    }
+
+    /**
+     * Search inside the limits of a cluster (see set_bounds) from a node. Without a
+     * destination node, the search expands all the reachable nodes (Dijkstra).
+     * The result is stored in the local search state.
+     * @param from index of the origin.
+     * @param to index of the destination or -1 to compute the costs to all the nodes.
+     * @param reverse true to compute the costs from each node to the origin.
+     * @return Number of expanded nodes.
+     */
+    private int local_search(int from, int to, boolean reverse)
+    {
+        local.reset();
+        lopen.clear();
+        Node dest = to < 0? null : map.get_node(to);
+        local.set_parent(from, from);
+        local.set_f(from, 0, dest == null? 0 : heur(map.get_node(from), dest));
+        lopen.add(from);
+        int id, nid, x, y, nx, ny, moves;
+        int cols = map.get_cols();
+        int expanded = 0;
+        float g;
+        while((id = lopen.poll()) >= 0)
+        {
+            local.close(id);
+            expanded++;
+            if(id == to)
+                break;
+            x = id % cols;
+            y = id / cols;
+            moves = reverse? 0xFF : map.get_los_moves(id);
+            g = local.get_g(id);
+            for(int d = 0; moves != 0; d++, moves >>= 1)
+            {
+                if((moves & 1) == 0)
+                    continue;
+                nx = x + Map.DX[d];
+                ny = y + Map.DY[d];
+                if(nx < lx0 || nx > lx1 || ny < ly0 || ny > ly1)
+                    continue;
+                nid = ny * cols + nx;
+                // The move from the predecessor has the opposite direction
+                if(reverse && (map.get_los_moves(nid) & (1 << (Map.NSUCCESSORS - 1 - d))) == 0)
+                    continue;
+                if(local.is_closed(nid) || g + STEP[d] >= local.get_g(nid))
+                    continue;
+                local.set_f(nid, g + STEP[d], dest == null? 0 : heur(map.get_node(nid), dest));
+                local.set_parent(nid, id);
+                lopen.update(nid);
+            }
+        }
+        lopen.clear();
+        return expanded;
+    }
+
+    /**
+     * Compute the transitions of the entrances between a cluster and its right and
+     * bottom neighbours.
+     * @param i index of the cluster.
+     */
+    private void build_entrances(int i)
+    {
+        Cluster c = clusters[i];
+        // Right: the move to the right is direction 4 and the opposite one is 3
+        c.right = i % ccols < ccols - 1? entrances(c.x1, c.y0, 0, 1, c.y1 - c.y0 + 1, 1, 0, 4) : Cluster.EMPTY;
+        // Bottom: the move down is direction 6 and the opposite one is 1
+        c.down = i / ccols < crows - 1? entrances(c.x0, c.y1, 1, 0, c.x1 - c.x0 + 1, 0, 1, 6) : Cluster.EMPTY;
+    }
+
+    /**
+     * Find the transitions of a border: the maximal segments of nodes with moves in both
+     * directions across the border are the entrances, with a transition in the middle of the
+     * short ones and at both ends of the long ones.
+     * @param x x position of the first node of the border (inside the cluster).
+     * @param y y position of the first node of the border (inside the cluster).
+     * @param sx x increment along the border.
+     * @param sy y increment along the border.
+     * @param len number of nodes of the border.
+     * @param ox x offset of the node at the other side.
+     * @param oy y offset of the node at the other side.
+     * @param dir direction of the move across the border.
+     * @return Pairs of nodes (inside, outside) of the transitions.
+     */
+    private int[] entrances(int x, int y, int sx, int sy, int len, int ox, int oy, int dir)
+    {
+        int n = 0;
+        int first = -1;
+        int a, b;
+        for(int i = 0; i <= len; i++)
+        {
+            boolean crossable = false;
+            if(i < len)
+            {
+                a = map.get_index(x + i*sx, y + i*sy);
+                b = map.get_index(x + i*sx + ox, y + i*sy + oy);
+                crossable = (map.get_los_moves(a) & (1 << dir)) != 0 &&
+                        (map.get_los_moves(b) & (1 << (Map.NSUCCESSORS - 1 - dir))) != 0;
+            }
+            if(crossable && first < 0)
+                first = i;
+            else if(!crossable && first >= 0)
+            {
+                // Entrance [first, i-1]
+                if(i - first >= LONG_ENTRANCE)
+                {
+                    n = add_transition(n, x + first*sx, y + first*sy, ox, oy);
+                    n = add_transition(n, x + (i-1)*sx, y + (i-1)*sy, ox, oy);
+                }
+                else
+                {
+                    int m = (first + i - 1) / 2;
+                    n = add_transition(n, x + m*sx, y + m*sy, ox, oy);
+                }
+                first = -1;
+            }
+        }
+        return Arrays.copyOf(buffer, n);
+    }
+
+    /**
+     * Store a transition in the auxiliary buffer.
+     * @return The new number of elements of the buffer.
+     */
+    private int add_transition(int n, int x, int y, int ox, int oy)
+    {
+        buffer = add(buffer, n, map.get_index(x, y));
+        buffer = add(buffer, n + 1, map.get_index(x + ox, y + oy));
+        return n + 2;
+    }
+
+    /**
+     * Compute the nodes of the abstract graph of a cluster (the transitions of its
+     * entrances) and the costs between them.
+     * @param c cluster.
+     */
+    private void build_graph(Cluster c)
+    {
+        int i = index_of(c);
+        int cx = i % ccols;
+        int cy = i / ccols;
+        int k;
+        int nodes[] = new int[c.right.length / 2 + c.down.length / 2 + 2 * csize];
+        int partner[] = new int[2 * nodes.length];
+        Arrays.fill(partner, -1);
+        k = add_nodes(c.right, 0, nodes, partner, 0);
+        k = add_nodes(c.down, 0, nodes, partner, k);
+        if(cx > 0)
+            k = add_nodes(clusters[i - 1].right, 1, nodes, partner, k);
+        if(cy > 0)
+            k = add_nodes(clusters[i - ccols].down, 1, nodes, partner, k);
+        c.nodes = Arrays.copyOf(nodes, k);
+        c.partner = Arrays.copyOf(partner, 2 * k);
+        c.cost = new float[k * k];
+        set_bounds(c);
+        for(int n = 0; n < k; n++)
+        {
+            local_search(c.nodes[n], -1, false);
+            for(int m = 0; m < k; m++)
+                c.cost[n * k + m] = local.get_g(c.nodes[m]);
+        }
+    }
+
+    /**
+     * Add the nodes of one side of a list of transitions to the nodes of a cluster.
+     * A node can be in two entrances (corners of the cluster).
+     * @param trans transitions (pairs of nodes).
+     * @param side 0 to add the first node of each pair, 1 to add the second one.
+     * @param nodes nodes of the cluster.
+     * @param partner nodes at the other side of the entrances (two for each node).
+     * @param k number of nodes.
+     * @return New number of nodes.
+     */
+    private int add_nodes(int trans[], int side, int nodes[], int partner[], int k)
+    {
+        int id, n;
+        for(int t = 0; t < trans.length; t += 2)
+        {
+            id = trans[t + side];
+            for(n = 0; n < k && nodes[n] != id; n++);
+            if(n == k)
+                nodes[k++] = id;
+            partner[2 * n + (partner[2 * n] < 0? 0 : 1)] = trans[t + 1 - side];
+        }
+        return k;
+    }
+
+    /**
+     * Compute a value that changes when the allowed moves of the nodes of a cluster change.
+     * @param c cluster.
+     * @return The signature of the cluster.
+     */
+    private long signature(Cluster c)
+    {
+        long sign = 17;
+        for(int y = c.y0; y <= c.y1; y++)
+            for(int x = c.x0; x <= c.x1; x++)
+                sign = sign * 31 + map.get_los_moves(map.get_index(x, y));
+        return sign;
+    }
+
+    /**
+     * Limit the searches inside a cluster to its nodes.
+     * @param c cluster.
+     */
+    private void set_bounds(Cluster c)
+    {
+        lx0 = c.x0;
+        ly0 = c.y0;
+        lx1 = c.x1;
+        ly1 = c.y1;
+    }
+
+    /**
+     * @param id index of a node.
+     * @return The cluster that contains the node.
+     */
+    private Cluster cluster_of(int id)
+    {
+        int cols = map.get_cols();
+        return clusters[(id / cols / csize) * ccols + (id % cols) / csize];
+    }
+
+    /**
+     * @param c cluster.
+     * @return The position of the cluster in the clusters array.
+     */
+    private int index_of(Cluster c)
+    {
+        return (c.y0 / csize) * ccols + c.x0 / csize;
+    }
+
+    /**
+     * @param c cluster.
+     * @param id index of a node of the cluster.
+     * @return The position of the node in the abstract nodes of the cluster or -1.
+     */
+    private static int node_of(Cluster c, int id)
+    {
+        for(int n = 0; n < c.nodes.length; n++)
+            if(c.nodes[n] == id)
+                return n;
+        return -1;
+    }
+
+    /**
+     * @param from index of a node.
+     * @param to index of a neighbour node.
+     * @return The direction of the move between both nodes.
+     */
+    private int get_direction(int from, int to)
+    {
+        int cols = map.get_cols();
+        int dx = to % cols - from % cols;
+        int dy = to / cols - from / cols;
+        // Position in the 3x3 window without the central node
+        int d = (dy + 1) * 3 + dx + 1;
+        return d > 4? d - 1 : d;
+    }
+
+    /**
+     * Store a value in a buffer, increasing its size if it is full.
+     * @return The buffer with the value.
+     */
+    private static int[] add(int buf[], int pos, int value)
+    {
+        if(pos >= buf.length)
+            buf = Arrays.copyOf(buf, Math.max(pos + 1, buf.length * 2));
+        buf[pos] = value;
+        return buf;
+    }
+
+    /**
+     * Calculates the heuristics between two nodes (no heuristic for alpha heuristics).
+     * @param n node.
+     * @param dest destination node.
+     * @return The heuristic value.
+     */
+    private float heur(Node n, Node dest)
+    {
+        if(heuristic == Heuristics.H_ALPHA || heuristic == Heuristics.H_ALPHA2)
+            return 0;
+        return Heuristics.CalculateH(heuristic, n, dest);
+    }
+
+    /**
+     * Square region of the map with the nodes and costs of its part of the abstract graph.
+     */
+    private static class Cluster {
+
+        /** Empty list of nodes. */
+        static final int EMPTY[] = new int[0];
+        /** Limits of the cluster (included). */
+        int x0, y0, x1, y1;
+        /** Transitions with the right neighbour: pairs of nodes (inside, outside). */
+        int right[] = EMPTY;
+        /** Transitions with the bottom neighbour: pairs of nodes (inside, outside). */
+        int down[] = EMPTY;
+        /** Abstract nodes of the cluster. */
+        int nodes[] = EMPTY;
+        /** Nodes at the other side of the entrances of each node (two for each node, -1 if none). */
+        int partner[] = EMPTY;
+        /** Costs between the nodes inside the cluster (row by origin node). */
+        float cost[];
+        /** Signature of the allowed moves of the nodes of the cluster. */
+        long signature;
+        /** Mark of the last refresh that has checked the cluster. */
+        int checked;
+    }
+
+    /**
+     * State of an abstract graph shared by several searches. Its lock is held while the
+     * graph is refreshed.
+     */
+    private static class Abstraction {
+
+        /** Version of the map used to build the graph, updated when the graph is ready. */
+        volatile int version;
+        /** Iteration used to mark the clusters to rebuild. */
+        int mark[];
+        /** Current mark. */
+        int curmark;
+    }
+
+}
@@ -15,6 +15,19 @@ public abstract class Heuristics {
     public final static short H_ALPHA       = 5;
     public final static short H_ALPHA2      = 6;
     
+    /**
+     * Check if a heuristic never overestimates the cost of the grid paths, so a search
+     * weighted by w finds a path whose cost is at most w times the optimal one.
+     * Manhattan (diagonal moves), octile with Z and the alpha heuristics (angle penalty)
+     * can overestimate it.
+     * @param hfun heuristics function.
+     * @return True if the heuristic is admissible.
+     */
+    public static boolean IsAdmissible(short hfun)
+    {
+        return hfun == H_EUCLIDEAN || hfun == H_EUCLIDEAN_Z || hfun == H_OCTILE;
+    }
+    
     /**
      * Calculate a particular heuristics for two nodes.
      * @param hfun heuristics function.
@@ -0,0 +1,442 @@
+package PathPlanning;
+
+/**
+ * Implements the Jump Point Search algorithm (JPS) to search a path in a DEM, and
+ * its variant with precomputed jump distances (JPS+).
+ * Moves between neighbour nodes have uniform costs (1 for straight moves and sqrt(2)
+ * for diagonal moves), so A* expands many symmetric paths with the same cost. JPS only
+ * expands the nodes where an optimal path could change its direction (jump points),
+ * reaching them moving in straight or diagonal lines from the expanded node.
+ * The allowed moves are taken from the map (see Map.get_los_moves), so obstacles and
+ * traversal costs are considered as A* does, both in cornernode and center-node modes.
+ * The path found only contains the jump points.
+ */
+public class JPS extends SearchMethod {
+
+    /** Length of a straight move used to compare local paths. */
+    private static final int STRAIGHT = 1000;
+    /** Length of a diagonal move used to compare local paths (enough precision for paths of few moves). */
+    private static final int DIAGONAL = 1414;
+    /** Infinite local distance. */
+    private static final int INF = Integer.MAX_VALUE;
+    /** Direction (see Map.DX and Map.DY) of each (dx+1)+(dy+1)*3 displacement, -1 for no displacement. */
+    private static final int DIRS[] = {0, 1, 2, 3, -1, 4, 5, 6, 7};
+    /** Natural successors (a bit per direction) of a node reached in each direction without obstacles. */
+    private static final int NATURAL[] = {0x0B, 0x02, 0x16, 0x08, 0x10, 0x68, 0x40, 0xD0};
+    /** Open nodes list, sorted by F. */
+    private OpenList open;
+    /** True to use precomputed jump distances (JPS+). */
+    private boolean plus;
+    /** True for the nodes without obstacles around (all its moves and those of its neighbours are allowed). */
+    private boolean free[];
+    /** Jump distances for JPS+ for each direction and node: positive values are the distance
+     * to the next jump point and zero or negative values the distance to an obstacle. */
+    private int jumps[][];
+    /** Difference of the linear index of a node and its successor in each direction. */
+    private int offset[];
+    /** Linear index of the goal node. */
+    private int gid;
+    /** Version of the map used to calculate free and jumps (see Map.get_version). */
+    private int version;
+    /** Position in the 3x3 window of the successor of each window position and direction, -1 outside. */
+    private static final int WINDOW[][] = new int[9][Map.NSUCCESSORS];
+    static
+    {
+        int rx, ry;
+        for(int w = 0; w < 9; w++)
+            for(int k = 0; k < Map.NSUCCESSORS; k++)
+            {
+                rx = w % 3 - 1 + Map.DX[k];
+                ry = w / 3 - 1 + Map.DY[k];
+                if(rx < -1 || rx > 1 || ry < -1 || ry > 1 || (rx == 0 && ry == 0))
+                    WINDOW[w][k] = -1;
+                else
+                    WINDOW[w][k] = (rx + 1) + (ry + 1) * 3;
+            }
+    }
+    /** Shortest distances from the parent to the neighbours of a node, used to prune successors. */
+    private int local[] = new int[9];
+
+    /**
+     * Constructor for JPS (without precomputed jump distances).
+     * @param dem terrain info.
+     * @param init start node.
+     * @param end goal node.
+     * @param heur heuristic used for search.
+     * @param withz true for use Z values (not used for the cost of the moves).
+     * @param withc true for use transversal costs.
+     */
+    public JPS(Map dem, Node init, Node end, short heur, boolean withz, boolean withc)
+    {
+        this(dem, init, end, heur, withz, withc, false);
+    }
+
+    /**
+     * Constructor for JPS or JPS+. The nodes without obstacles around (and for JPS+ the jump
+     * distances) are calculated here, and again by search if the map has changed.
+     * @param dem terrain info.
+     * @param init start node.
+     * @param end goal node.
+     * @param heur heuristic used for search.
+     * @param withz true for use Z values (not used for the cost of the moves).
+     * @param withc true for use transversal costs.
+     * @param jpsplus true to use precomputed jump distances (JPS+).
+     */
+    public JPS(Map dem, Node init, Node end, short heur, boolean withz, boolean withc, boolean jpsplus)
+    {
+        super(jpsplus? "JPS+" : "JPS", dem, init, end, heur, withz, withc, false);
+        open = new OpenList(dem, state);
+        offset = new int[Map.NSUCCESSORS];
+        for(int d = 0; d < Map.NSUCCESSORS; d++)
+            offset[d] = Map.DX[d] + Map.DY[d] * dem.get_cols();
+        plus = jpsplus;
+        preprocess();
+    }
+
+    @Override
+    /**
+     * Clear internal data of the algorithm.
+     */
+    protected void clear_internal_data()
+    {
+        open.clear();
+        state.clear_closed();
+    }
+
+    /**
+     * Find the nodes without obstacles around and, for JPS+, calculate the jump distances of all the nodes.
+     */
+    public final void preprocess()
+    {
+        version = map.get_version();
+        free = new boolean[map.get_cols() * map.get_rows()];
+        for(int j = 0; j < map.get_rows(); j++)
+            for(int i = 0; i < map.get_cols(); i++)
+                free[map.get_index(i, j)] = is_open(i, j);
+        if(!plus)
+            return;
+        jumps = new int[Map.NSUCCESSORS][map.get_cols() * map.get_rows()];
+        // Diagonal jumps require the straight ones
+        for(int d = 0; d < Map.NSUCCESSORS; d++)
+            if(!is_diagonal(d))
+                preprocess(d);
+        for(int d = 0; d < Map.NSUCCESSORS; d++)
+            if(is_diagonal(d))
+                preprocess(d);
+    }
+
+    /**
+     * Calculate the jump distances of all the nodes for one direction.
+     * @param d direction of the jumps.
+     */
+    private void preprocess(int d)
+    {
+        int cols = map.get_cols();
+        int rows = map.get_rows();
+        // Nodes are visited in the inverse direction of the move, so the next node is calculated first
+        int x0 = Map.DX[d] > 0? cols-1 : 0;
+        int y0 = Map.DY[d] > 0? rows-1 : 0;
+        int sx = Map.DX[d] > 0? -1 : 1;
+        int sy = Map.DY[d] > 0? -1 : 1;
+        int id, next, dist;
+        for(int j = 0, y = y0; j < rows; j++, y += sy)
+            for(int i = 0, x = x0; i < cols; i++, x += sx)
+            {
+                id = map.get_index(x, y);
+                next = id + offset[d];
+                if((map.get_los_moves(id) & (1 << d)) == 0)
+                    dist = 0;
+                else if(is_forced(next, d) || (is_diagonal(d) &&
+                        (jumps[horizontal(d)][next] > 0 || jumps[vertical(d)][next] > 0)))
+                    dist = 1;
+                else if(jumps[d][next] > 0)
+                    dist = jumps[d][next] + 1;
+                else
+                    dist = jumps[d][next] - 1;
+                jumps[d][id] = dist;
+            }
+    }
+
+    /**
+     * Search a path using the JPS (or JPS+) algorithm.
+     * @return True if a path is found or false if no path found.
+     */
+    @Override
+    public boolean search()
+    {
+        if(!check_valid_data())
+            return false;
+        if(version != map.get_version())
+            preprocess();
+
+        // Set initial state
+        int sid = index(start);
+        gid = index(goal);
+        state.set_parent(sid, sid);
+        state.set_f(sid, 0, get_h(start, start, goal));
+        open.add(sid);
+        // Auxiliary variables
+        Node pos, succ;
+        int id, jp, succs;
+        float gsuc;
+
+        // Begin search
+        start_cpu_counter();
+        while(!open.isEmpty())
+        {
+            id = open.poll();
+            pos = map.get_node(id);
+            state.close(id);
+            expnodes++;
+
+            // If position is solution => finish
+            if(id == gid)
+            {
+                clear_internal_data();
+                end_cpu_counter();
+                return true;
+            }
+
+            // Jump from the actual point in the direction of each successor not pruned
+            succs = get_successors(id, get_direction(id));
+            for(int d = 0; succs != 0; d++, succs >>= 1)
+            {
+                if((succs & 1) == 0)
+                    continue;
+                jp = plus? jump_plus(pos, d) : jump(id, d);
+                if(jp < 0 || state.is_closed(jp))
+                    continue;
+                succ = map.get_node(jp);
+                gsuc = state.get_g(id) + Geometry.LongHyp(succ.getX() - pos.getX(), succ.getY() - pos.getY());
+                if(gsuc < state.get_g(jp))
+                {
+                    state.set_f(jp, gsuc, get_h(pos, succ, goal));
+                    state.set_parent(jp, id);
+                    // Insert jump point in open list or update its position if is contained
+                    open.update(jp);
+                }
+            }// End of succesor check
+
+        } // Open list is empty, no path found
+        end_cpu_counter();
+        return false;
+    }
+
+    /**
+     * Move from a node in one direction until a jump point is reached.
+     * @param id index of the initial node.
+     * @param d direction of the move.
+     * @return The index of the jump point or -1 if an obstacle is reached before.
+     */
+    private int jump(int id, int d)
+    {
+        int next;
+        while((map.get_los_moves(id) & (1 << d)) != 0)
+        {
+            next = id + offset[d];
+            // Straight moves through nodes without obstacles around never stop
+            if(!is_diagonal(d))
+                while(free[next] && next != gid)
+                    next += offset[d];
+            if(next == gid || is_forced(next, d))
+                return next;
+            // Diagonal moves stop where a straight move reaches a jump point
+            if(is_diagonal(d) && (jump(next, horizontal(d)) >= 0 || jump(next, vertical(d)) >= 0))
+                return next;
+            id = next;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the jump point of a node in one direction using the precomputed distances (JPS+).
+     * If the goal is reached before, the goal (straight moves) or the node aligned with
+     * the goal (diagonal moves) is returned.
+     * @param pos initial node.
+     * @param d direction of the move.
+     * @return The index of the jump point or -1 if an obstacle is reached before.
+     */
+    private int jump_plus(Node pos, int d)
+    {
+        int id = index(pos);
+        int dist = jumps[d][id];
+        if(dist == 0)
+            return -1;
+        int dx = goal.getX() - pos.getX();
+        int dy = goal.getY() - pos.getY();
+        int steps = -1;
+        if(Integer.signum(dx) == Map.DX[d] && Integer.signum(dy) == Map.DY[d])
+        {
+            if(is_diagonal(d))
+                steps = Math.min(Math.abs(dx), Math.abs(dy));
+            else
+                steps = Math.abs(dx + dy);
+        }
+        if(steps > 0 && steps <= Math.abs(dist))
+            return id + steps * offset[d];
+        return dist > 0? id + dist * offset[d] : -1;
+    }
+
+    /**
+     * Get the successors of a node that must be considered, pruning the neighbours that
+     * can be reached from the parent by a shorter path that does not pass through the node,
+     * or by an equal one when the path through the node is not the preferred one (see keep_ties).
+     * @param id index of the node.
+     * @param d direction used to reach the node, -1 for the start node.
+     * @return A mask with bit k set if the successor in direction k is not pruned.
+     */
+    private int get_successors(int id, int d)
+    {
+        int moves = map.get_los_moves(id);
+        if(d < 0 || moves == 0)
+            return moves;
+        // Without obstacles around the node only the natural successors remain
+        if(free[id])
+            return NATURAL[d];
+        Node n = map.get_node(id);
+        int x = n.getX();
+        int y = n.getY();
+
+        // Shortest distances from the parent to the neighbours without pass through the node.
+        // Paths through the node are not longer than two diagonal moves, so only paths of
+        // one or two moves (any path of three moves is longer) can prune a successor
+        int p = 4 - Map.DX[d] - 3 * Map.DY[d];
+        for(int w = 0; w < 9; w++)
+            local[w] = INF;
+        local[p] = 0;
+        relax(p, x, y);
+        for(int w = 0; w < 9; w++)
+            if(w != p && local[w] != INF)
+                relax(w, x, y);
+        int dist;
+        // Compare with the paths through the node
+        int succs = 0;
+        int through;
+        for(int k = 0; k < Map.NSUCCESSORS; k++)
+        {
+            if((moves & (1 << k)) == 0)
+                continue;
+            dist = local[WINDOW[4][k]];
+            through = length(d) + length(k);
+            if(dist > through || (dist == through && keep_ties(d, k)))
+                succs |= 1 << k;
+        }
+        return succs;
+    }
+
+    /**
+     * Check if a path of two moves is kept when another path of the same length reaches
+     * the same node. Diagonal moves go first (a straight move followed by a diagonal one is
+     * pruned) and horizontal moves go before vertical ones, so only one of the symmetric paths
+     * is pruned (pruning both loses the paths around a blocked diagonal in cornernode mode).
+     * @param d direction of the first move.
+     * @param k direction of the second move.
+     * @return True if the path is kept on ties.
+     */
+    private static boolean keep_ties(int d, int k)
+    {
+        return is_diagonal(d) || (!is_diagonal(k) && Map.DY[d] == 0);
+    }
+
+    /**
+     * Update the local distances of the neighbours of a window position.
+     * @param w position in the 3x3 window around the node.
+     * @param x x position of the node (center of the window).
+     * @param y y position of the node (center of the window).
+     */
+    private void relax(int w, int x, int y)
+    {
+        int moves = map.get_los_moves(x + w % 3 - 1, y + w / 3 - 1);
+        int v, dist;
+        for(int k = 0; moves != 0; k++, moves >>= 1)
+        {
+            v = WINDOW[w][k];
+            if((moves & 1) == 0 || v < 0)
+                continue;
+            dist = local[w] + length(k);
+            if(dist < local[v])
+                local[v] = dist;
+        }
+    }
+
+    /**
+     * Check if a node reached in one direction has successors that are not natural
+     * (forced neighbours), so it is a jump point.
+     * @param id index of the node.
+     * @param d direction used to reach the node.
+     * @return True if the node has forced neighbours.
+     */
+    private boolean is_forced(int id, int d)
+    {
+        return (get_successors(id, d) & ~NATURAL[d]) != 0;
+    }
+
+    /**
+     * Check if all the moves of a node and its neighbours are allowed.
+     * @param x x position of the node.
+     * @param y y position of the node.
+     * @return True if there are no obstacles around the node.
+     */
+    private boolean is_open(int x, int y)
+    {
+        if(x < 1 || y < 1 || x > map.get_cols()-2 || y > map.get_rows()-2)
+            return false;
+        for(int j = y-1; j <= y+1; j++)
+            for(int i = x-1; i <= x+1; i++)
+                if(map.get_los_moves(i, j) != 0xFF)
+                    return false;
+        return true;
+    }
+
+    /**
+     * Get the direction used to reach a node from its parent.
+     * @param id index of the node.
+     * @return The direction (see Map.DX and Map.DY) or -1 for the start node.
+     */
+    private int get_direction(int id)
+    {
+        int p = state.get_parent(id);
+        if(p == id || p == SearchState.NO_PARENT)
+            return -1;
+        Node n = map.get_node(id);
+        Node par = map.get_node(p);
+        return DIRS[Integer.signum(n.getX() - par.getX()) + 1 + (Integer.signum(n.getY() - par.getY()) + 1) * 3];
+    }
+
+    /**
+     * @param d direction.
+     * @return True if the direction is a diagonal move.
+     */
+    private static boolean is_diagonal(int d)
+    {
+        return Map.DX[d] != 0 && Map.DY[d] != 0;
+    }
+
+    /**
+     * @param d direction.
+     * @return The length of a move in the direction (see STRAIGHT and DIAGONAL).
+     */
+    private static int length(int d)
+    {
+        return is_diagonal(d)? DIAGONAL : STRAIGHT;
+    }
+
+    /**
+     * @param d diagonal direction.
+     * @return The horizontal component of the direction.
+     */
+    private static int horizontal(int d)
+    {
+        return DIRS[Map.DX[d] + 1 + 3];
+    }
+
+    /**
+     * @param d diagonal direction.
+     * @return The vertical component of the direction.
+     */
+    private static int vertical(int d)
+    {
+        return DIRS[1 + (Map.DY[d] + 1) * 3];
+    }
+
+}
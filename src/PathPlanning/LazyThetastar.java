@@ -0,0 +1,168 @@
+package PathPlanning;
+
+
+
+/**
+ * Implements the Lazy Theta* algorithm to search a path in a DEM.
+ * The algorithm is described in <i>Lazy Theta*: Any-Angle Path Planning and Path Length
+ * Analysis in 3D. Alex Nash et al., 2010</i>.
+ * Unlike Basic Theta*, the line of sight between the parent of the expanded node and
+ * each successor is assumed when the successor is generated, and it is only checked
+ * once when the successor is expanded. If there is no line of sight, the best closed
+ * neighbour is selected as parent (A* path). The successors are generated with the
+ * moves that have line of sight (see Map.get_los_moves), so the closed neighbour that
+ * generated a node is always a valid parent.
+ */
+public class LazyThetastar extends SearchMethod {
+
+    /** Open nodes list, sorted by F. */
+    private OpenList open;
+
+
+    /**
+     * Constructor for LazyThetastar class.
+     * @param dem terrain info.
+     * @param init start node.
+     * @param end goal node.
+     * @param heur heuristic used for search.
+     * @param withz true for use Z values.
+     * @param withc true for use transversal costs.
+     */
+    public LazyThetastar(Map dem, Node init, Node end, short heur, boolean withz, boolean withc)
+    {
+        super("Lazy Theta*", dem, init, end, heur, withz, withc, true);
+	open = new OpenList(dem, state);
+        // Change tie breaking flag
+        Node.ChangeTieBreakingFlag();
+    }
+
+    @Override
+    /**
+     * Clear internal data of the algorithm.
+     */
+    protected void clear_internal_data()
+    {
+	open.clear();
+	state.clear_closed();
+    }
+
+    /**
+     * Search a path using the Lazy Theta* algorithm.
+     * @return True if a path is found or false if no path found.
+     */
+    @Override
+    public boolean search()
+    {
+        if(!check_valid_data())
+            return false;
+
+        // Set initial state
+        int sid = index(start);
+        state.set_parent(sid, sid);
+        state.set_f(sid, 0, get_h(start, start, goal));
+        open.add(sid);
+        Node pos;
+        // Auxiliary variables
+        int id, nsucc;
+
+        // Begin search
+        start_cpu_counter();
+        while(!open.isEmpty())
+        {
+            id = open.poll();
+            pos = map.get_node(id);
+            // Check the line of sight with the parent, the node is not reachable without a valid parent
+            if(!set_vertex(pos))
+                continue;
+            state.close(id);
+            expnodes++;
+
+            // If position is solution => finish
+            if(pos.equals(goal))
+            {
+                clear_internal_data();
+                end_cpu_counter();
+                return true;
+            }
+
+            // Generate succesors for actual point
+            nsucc = map.get_los_succesors(id, succlist);
+            for(int i=0; i < nsucc; i++)
+            {
+                if(!state.is_closed(succlist[i]))
+                    updateVertex(pos, map.get_node(succlist[i]));
+            }// End of succesor check
+
+        } // Open list is empty, no path found
+        end_cpu_counter();
+        return false;
+    }
+
+    /**
+     * Check the line of sight between an expanded node and its parent. If there is no
+     * line of sight, the parent is replaced by the closed neighbour that minimizes the
+     * cost to reach the node (Path 1), without more line of sight checks.
+     * @param pos expanded node.
+     * @return True if the node has a valid parent, false if it can not be reached yet.
+     */
+    private boolean set_vertex(Node pos)
+    {
+        int id = index(pos);
+        int pid = state.get_parent(id);
+        if(pid == id || Geometry.LineOfSightB(map, map.get_node(pid), pos))
+            return true;
+        int best = SearchState.NO_PARENT;
+        float bestg = Float.MAX_VALUE;
+        float g;
+        int x, y, nid;
+        for(int d = 0; d < Map.NSUCCESSORS; d++)
+        {
+            x = pos.getX() + Map.DX[d];
+            y = pos.getY() + Map.DY[d];
+            if(!map.valid_pos(x, y))
+                continue;
+            nid = map.get_index(x, y);
+            // Same moves used to generate the successors, the move from the neighbour has the opposite direction
+            if(!state.is_closed(nid) || (map.get_los_moves(nid) & (1 << (Map.NSUCCESSORS - 1 - d))) == 0)
+                continue;
+            // Path 1 (A*)
+            g = state.get_g(nid) + Geometry.LongHyp(Map.DX[d], Map.DY[d]);
+            if(g < bestg)
+            {
+                bestg = g;
+                best = nid;
+            }
+        }
+        if(best == SearchState.NO_PARENT)
+        {
+            // Not reached yet: it can be generated again by a neighbour expanded later
+            state.set_f(id, Float.MAX_VALUE, state.get_h(id));
+            state.set_parent(id, SearchState.NO_PARENT);
+            return false;
+        }
+        state.set_f(id, bestg, state.get_h(id));
+        state.set_parent(id, best);
+        return true;
+    }
+
+    /**
+     * Update a successor assuming line of sight from the parent of the actual position
+     * (Path 2). The line of sight is checked when the successor is expanded.
+     * @param pos actual position.
+     * @param succ successor to test.
+     */
+    private void updateVertex(Node pos, Node succ)
+    {
+        Node parent = get_parent(pos);
+        int id = index(succ);
+        float gsuc = state.get_g(index(parent)) + Geometry.LongHyp(succ.getX() - parent.getX(), succ.getY() - parent.getY());
+        if(gsuc < state.get_g(id))
+        {
+            state.set_f(id, gsuc, get_h(pos, succ, goal));
+            state.set_parent(id, index(parent));
+            // Insert succesor in open list or update its position if is contained
+            open.update(id);
+        }
+    }
+
+}
@@ -15,6 +15,46 @@ public class Main {
         return s != null && s.matches("[-+]?\\d*\\.?\\d+");
     }  
         
+    /**
+     * Convert the memory budget of the daemon to bytes.
+     * @param mb budget in MB.
+     * @return The budget in bytes or -1 if it is not a positive number of MB or the bytes overflow.
+     */
+    private static long budget_bytes(String mb)
+    {
+        try{
+            long budget = Long.parseLong(mb);
+            if(budget > 0 && budget <= (Long.MAX_VALUE >> 20))
+                return budget << 20;
+        }catch(NumberFormatException nfe){}
+        return -1;
+    }
+        
+    /**
+     * Run a connection with the task planner.
+     * @param args the arguments of the connection (see TaskPlannerConnect.initialize).
+     * @param maps maps loaded by previous sessions (daemon mode), null to load the map.
+     * @param env environment variables of the task planner.
+     * @return The exit status: 0 if the search is OK, -1 if it fails.
+     */
+    public static int plan(String args[], MapStore maps, java.util.Map env)
+    {
+	double timestart = System.currentTimeMillis();
+	TaskPlannerConnect pathsearch = new TaskPlannerConnect();
+	if(!pathsearch.initialize(args, maps, env))
+	    return -1;
+	float out = pathsearch.runSearch();
+	pathsearch.close();
+	if(out > 0)
+	{
+	    //System.out.println("Accumulated cost: "+out);
+	    System.out.println("#CPU-TIME: "+(System.currentTimeMillis()-timestart));
+	    return 0;
+	}
+	System.out.println("Search failed.");
+	return -1;
+    }
+    
     /**
      * @param args the command line arguments.
      */
@@ -24,25 +64,37 @@ public class Main {
 	/******************************
          *  TASK PLANNER CONNECTION
          ******************************/ 
-	 if((args.length == 3 || args.length == 4) && args[0].charAt(0) == '.')
+	 if(args.length >= 3 && args.length <= 5 && args[0].charAt(0) == '.')
+	     System.exit(plan(args, null, System.getenv()));
+	 
+	/******************************
+         *  PATH-PLANNING DAEMON
+         ******************************/ 
+	 if(args.length >= 1 && args.length <= 2 && args[0].equals("-daemon"))
 	 {
-	     double timestart = System.currentTimeMillis();
-	     TaskPlannerConnect pathsearch = new TaskPlannerConnect();
-	     if(!pathsearch.initialize(args))
-		 System.exit(-1);
-	     float out = pathsearch.runSearch();
-	     pathsearch.close();
-	     if(out > 0)
-	     {
-		 //System.out.println("Accumulated cost: "+out);
-		 System.out.println("#CPU-TIME: "+(System.currentTimeMillis()-timestart));
-		 System.exit(0);
-	     }
-	     else
+	     // Memory budget of the maps in MB, half of the heap by default
+	     long budget = Runtime.getRuntime().maxMemory() / 2;
+	     if(args.length == 2)
+		 budget = budget_bytes(args[1]);
+	     if(budget > 0)
+		 System.exit(new PlannerDaemon(budget).run()? 0 : -1);
+	     System.out.println("Invalid memory budget: "+args[1]);
+	 }
+	 
+	/******************************
+         *  BINARY MAP CONVERSION
+         ******************************/ 
+	 if(args.length == 4 && args[0].equals("-m"))
+	 {
+	     long timestart = System.currentTimeMillis();
+	     Map map = new Map(args[1], args[2]);
+	     if(!map.valid_dem() || !map.save(args[3]))
 	     {
-		 System.out.println("Search failed.");
+		 System.out.println("Cannot convert the map.");
 		 System.exit(-1);
 	     }
+	     System.out.println("Map "+map.get_cols()+"x"+map.get_rows()+" saved in "+args[3]+" ("+(System.currentTimeMillis()-timestart)+" ms)");
+	     System.exit(0);
 	 }
        
 	if(args.length < 5)
@@ -55,6 +107,12 @@ public class Main {
             System.out.println("       (less 40% to guarantee convergence of the algorithm.");
             System.out.println("     r for generate indoor map using square patterns r0-r5, 'value' is the size of");
             System.out.println("       the side for the patterns.");
+            System.out.println("\n>To convert a map (ASCII or PDS DEM file and cost file) to the binary format:");
+            System.out.println("  -m z-file c-file map-file\n");
+            System.out.println("     The binary map can be used instead of the z-file, without c-file (e.g. - ).");
+            System.out.println("\n>To serve the task planner keeping the maps between executions:");
+            System.out.println("  -daemon [budget]\n");
+            System.out.println("     budget is the maximum memory of the loaded maps in MB (default: half of the heap).");
             System.out.println("\n>To search a path:");
             System.out.println("  z-file c-file Xi Yi Xg Yg -alg [n] [-z[q]] [-c] pathfile [-w[s]]\n");
             System.out.println("     -z specifies to use altitude in search. Uses lineal interpolation for");
@@ -63,7 +121,11 @@ public class Main {
             System.out.println("     n multiplicative factor for alpha weight (olny b/v algorithms, def=1).");
             System.out.println("     -alg can be: -a -> A*, -p -> A*PS, -d -> Dijkstra, -t -> Basic Theta*");
             System.out.println("                  -s -> S-Theta*, -b -> A*PS ALPHAp, -v -> Basic Theta* ALPHAp");
-            System.out.println("                  -n -> 3Dana");
+            System.out.println("                  -j -> JPS, -k -> JPS+ (precomputed jumps), -n -> 3Dana");
+            System.out.println("                  -i -> Bidirectional A*, -m -> Bidirectional A* (two threads)");
+            System.out.println("                  -l -> Lazy Theta*, -e -> D* Lite, -y -> ARA*, -h -> HPA*");
+            System.out.println("     A weight for the heuristic of A* and Theta* algorithms can be added to -alg (e.g. -a1.5).");
+            System.out.println("     The sub-optimality bound is only reported for A* with an admissible heuristic.");
             System.out.println("     -w[s] show a window with map and path representation, s for scale zoom [1,50].");
             System.out.println("     When -z is used, it is possible to specify an altitude scaling factor and a maximum allowed slope ([0º, 45º]).");
             System.out.println("     Provide both factors after the -z parameter. If angle is negative, it disable the option: -z Scale Slope");
@@ -187,6 +249,10 @@ public class Main {
             System.exit(-1);
         }
         char alg = args[++nextarg].charAt(1);
+        // Weight of the heuristic for A* and Theta* algorithms (e.g. -a1.5)
+        float weight = 1;
+        if(args[nextarg].length() > 2 && isNumeric(args[nextarg].substring(2)))
+            weight = Float.parseFloat(args[nextarg].substring(2));
         // Check if want to use the Z and/or C values
         boolean withz = false;
         boolean withc = false;
@@ -258,6 +324,9 @@ public class Main {
             case 't': // Basic Theta* and G-Theta* when altitude is used in search process
                 algorithm = new Thetastar(map, map.get_node(xs, ys), map.get_node(xg, yg), heur, withz, withc);
                 break;
+            case 'l': // Lazy Theta*
+                algorithm = new LazyThetastar(map, map.get_node(xs, ys), map.get_node(xg, yg), heur, withz, withc);
+                break;
             case 'u': // 
                 algorithm = new Thetastar(map, map.get_node(xs, ys), map.get_node(xg, yg), Heuristics.H_ALPHA2, withz, withc);
                 algorithm.change_name("S-Theta*");
@@ -272,12 +341,41 @@ public class Main {
                 algorithm = new Thetastar(map, map.get_node(xs, ys), map.get_node(xg, yg), Heuristics.H_ALPHA, withz, withc);
                 algorithm.change_name("Basic Theta* H-alpha");
                 break;
+            case 'j': // Jump Point Search
+                algorithm = new JPS(map, map.get_node(xs, ys), map.get_node(xg, yg), Heuristics.H_OCTILE, withz, withc);
+                break;
+            case 'k': // Jump Point Search with precomputed jump distances
+                algorithm = new JPS(map, map.get_node(xs, ys), map.get_node(xg, yg), Heuristics.H_OCTILE, withz, withc, true);
+                break;
+            case 'i': // Bidirectional A*
+            case 'm': // Bidirectional A* with forward and backward searches in two threads
+                algorithm = new BiAstar(map, map.get_node(xs, ys), map.get_node(xg, yg), Heuristics.H_OCTILE, withz, withc);
+                ((BiAstar)algorithm).set_parallel(alg == 'm');
+                break;
+            case 'e': // D* Lite (incremental replanning)
+                algorithm = new DstarLite(map, map.get_node(xs, ys), map.get_node(xg, yg), Heuristics.H_OCTILE, withz, withc);
+                break;
+            case 'y': // Anytime Repairing A* with the default deadline
+                algorithm = new ARAstar(map, map.get_node(xs, ys), map.get_node(xg, yg), Heuristics.H_OCTILE, withz, withc);
+                break;
+            case 'h': // Hierarchical A* (clusters of the default size)
+                algorithm = new HPAstar(map, map.get_node(xs, ys), map.get_node(xg, yg), Heuristics.H_OCTILE, withz, withc);
+                break;
 	    default:
                 algorithm = new Astar();
                 System.out.println("Invalid search algorithm: " + alg);
                 System.exit(-1);
         }
         
+        if(algorithm instanceof Astar)
+            ((Astar)algorithm).set_weight(weight);
+        else if(algorithm instanceof Thetastar)
+            ((Thetastar)algorithm).set_weight(weight);
+        else if(weight != 1)
+        {
+            System.out.println("The heuristic weight is only valid for A* and Theta* algorithms (-" + alg + ").");
+            System.exit(-1);
+        }
         System.out.println(algorithm.toString()+"\n");
         double cputime = 0;
         int expnodes = 0;
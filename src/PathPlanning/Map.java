@@ -1,5 +1,13 @@
 package PathPlanning;
 
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Random;
 
@@ -45,6 +53,34 @@ public class Map {
     private float maxalt;
     /** Multiplicative scale factor for the map (elevation only). */
     private float scale;
+    /** Maximum number of successors of a node (8-connected grid). */
+    public static final int NSUCCESSORS = 8;
+    /** X offset for each successor direction, in the order used to generate successors. */
+    public static final int[] DX = {-1, 0, 1, -1, 1, -1, 0, 1};
+    /** Y offset for each successor direction, in the order used to generate successors. */
+    public static final int[] DY = {-1, -1, -1, 0, 0, 1, 1, 1};
+    /** Allowed moves of each node (by linear index): bit d is set if the successor in direction d is reachable. */
+    private byte moves[];
+    /** Allowed moves of each node with line of sight between both nodes (see get_los_moves), null if not calculated. */
+    private byte losmoves[];
+    /** Modification counter of the allowed moves, incremented each time they are updated. */
+    private int version;
+    /** Maximum number of positions of the log of changes (see get_changes). */
+    private static final int MAX_CHANGES = 1 << 16;
+    /** Positions updated by update_moves(x, y): the i-th one with version logbase+i+1. */
+    private int changes[] = new int[16];
+    /** Number of positions of the log of changes. */
+    private int nchanges;
+    /** Version before the first position of the log (the older changes are unknown). */
+    private int logbase;
+    /** Identifier at the start of the binary map files (see save). */
+    public static final String BINARY_ID = "UP2TAMAP";
+    /** Version of the binary map files. */
+    public static final int BINARY_VERSION = 1;
+    /** Size of the header of the binary map files. */
+    private static final int BINARY_HEADER = 64;
+    /** Maximum size of each mapped region of a binary map file. */
+    private static final long BINARY_REGION = 1L << 28;
 
   
     /**
@@ -87,6 +123,7 @@ public class Map {
             }
         minalt = map.min_alt();
         maxalt = map.max_alt();
+        update_moves();
     }
     
     /**
@@ -109,6 +146,7 @@ public class Map {
                 if(!cornernode || (cornernode && i < cols-1 && j < rows-1))
                     cost[i][j] = rand.nextInt(maxc)+1;
             }
+        update_moves();
     }
     
     /**
@@ -116,6 +154,8 @@ public class Map {
      * are automatically detected while read the file. If the cost file is null or invalid, it
      * set to 0 cost for all positions. The corner-mode is automatically adjust depending on the file read.
      * If the DEM file is invalid, it creates a new DEM of 50x50 with 0 Z values.
+     * If the DEM file is a binary map (see save), the map is loaded from it and the cost
+     * file is not used.
      * @param zfile file relative path with the Z values matrix.
      * @param cfile file relative path with the transversal cost matrix.
      */
@@ -124,22 +164,19 @@ public class Map {
         initialize(1, 1, true);
         minalt = Float.MAX_VALUE;
         maxalt = Float.MIN_VALUE;
+        if(is_binary_map(zfile))
+        {
+            if(!load(zfile))
+                dem = null;
+            return;
+        }
         // Read files and set columns and rows values.
         dem = FileManager.ReadZfile(zfile);
         if(dem != null)
         {
             cols = dem.length;
             rows = dem[0].length;
-
-            if(FORCE_POSITIVE_ELEVATION)
-            if(this.min_alt() < 0)
-            {
-                for(int i=0; i<cols; i++)
-                    for(int j=0; j<rows; j++)
-                        if(dem[i][j].getZ() != Float.MIN_VALUE)
-                            dem[i][j].setZ(dem[i][j].getZ()-minalt);
-                minalt = 0;
-            }
+            force_positive_elevation();
         }
 
         // Read cost
@@ -184,21 +221,22 @@ public class Map {
             cornernode = false;
         else
             cornernode = true;
+        update_moves();
     }
     
     /**
      * Erase all modified data of nodes in the DEM and set it to default values.
+     * Search algorithms store its data in a SearchState, so this is not required between searches.
      * @param keepExpanded true to keep previous expanded nodes marked as expanded
      */
     public void restart_map(boolean keepExpanded)
     {
         boolean exp = false;
-        float s;
         for(int i=0; i < cols; i++)
             for(int j=0; j < rows; j++)
             {
                 if(keepExpanded) exp = dem[i][j].isExpanded();
-                dem[i][j] = new Node(i, j, dem[i][j].getZ());
+                dem[i][j].reset();
                 dem[i][j].setExpanded(exp);
             }
     }
@@ -225,6 +263,7 @@ public class Map {
                     if(dem[i][j].getZ() < minalt)
                         minalt = dem[i][j].getZ();
                 }
+        update_moves();
     }
     
     /**
@@ -239,12 +278,311 @@ public class Map {
         if(!cornernode || (dem.length == cost.length && dem[0].length == cost[0].length))
         {
             cornernode = !cornernode;
+            update_moves();
             return true;
         }
         else
             return false;
     }
     
+    /**
+     * Calculate the allowed moves of all the nodes. Must be called after modify the
+     * elevation or the traversal costs of the map outside the methods of this class.
+     */
+    public final void update_moves()
+    {
+        if(dem == null || cols < 1 || rows < 1)
+            return;
+        moves = new byte[cols*rows];
+        for(int j = 0; j < rows; j++)
+            for(int i = 0; i < cols; i++)
+                moves[get_index(i, j)] = compute_moves(i, j);
+        losmoves = null;
+        version++;
+        // All the positions have changed
+        nchanges = 0;
+        logbase = version;
+    }
+    
+    /**
+     * Update the allowed moves of the nodes around a position after a change of the
+     * elevation (for example Node.setObstacle) or the traversal cost of that position.
+     * @param x x position of the modified node or cost cell.
+     * @param y y position of the modified node or cost cell.
+     */
+    public void update_moves(int x, int y)
+    {
+        // A cost cell affects the moves between the nodes of its corners, and the cost
+        // of the nodes of the border is taken from its nearest cell (see get_tcost)
+        for(int j = y-2; j <= y+2; j++)
+            for(int i = x-2; i <= x+2; i++)
+                if(valid_pos(i, j))
+                    moves[get_index(i, j)] = compute_moves(i, j);
+        if(losmoves != null && losmoves != moves)
+            for(int j = y-2; j <= y+2; j++)
+                for(int i = x-2; i <= x+2; i++)
+                    if(valid_pos(i, j))
+                        losmoves[get_index(i, j)] = compute_los_moves(i, j);
+        version++;
+        if(nchanges == changes.length)
+        {
+            if(changes.length >= MAX_CHANGES)
+            {
+                // Too many changes: they are forgotten as in update_moves()
+                nchanges = 0;
+                logbase = version;
+                return;
+            }
+            changes = java.util.Arrays.copyOf(changes, changes.length * 2);
+        }
+        changes[nchanges++] = get_index(x, y);
+    }
+    
+    /**
+     * Get the positions updated by update_moves(x, y) since a version of the map. The
+     * allowed moves may have changed in the nodes at distance 2 or less of each position.
+     * @param since version of the map (see get_version).
+     * @return The linear indexes of the positions (they can be repeated) or null if the
+     * changes are unknown (the moves of the whole map have been updated since then).
+     */
+    public int[] get_changes(int since)
+    {
+        if(since < logbase || since > version)
+            return null;
+        return java.util.Arrays.copyOfRange(changes, since - logbase, nchanges);
+    }
+    
+    /**
+     * Get the modification counter of the allowed moves. Algorithms with preprocessed
+     * information of the map can use it to detect changes of the map.
+     * @return A value that changes each time the allowed moves are updated.
+     */
+    public int get_version()
+    {
+        return version;
+    }
+    
+    /**
+     * Mark a node as an obstacle and update the allowed moves around it.
+     * @param x x position of the node.
+     * @param y y position of the node.
+     */
+    public void set_obstacle(int x, int y)
+    {
+        if(valid_pos(x, y))
+        {
+            dem[x][y].setObstacle();
+            update_moves(x, y);
+        }
+    }
+    
+    /**
+     * Change the traversal cost of a cell and update the allowed moves around it.
+     * @param x x position of the cost cell.
+     * @param y y position of the cost cell.
+     * @param c new traversal cost (greater than MAX_COST for an obstacle).
+     */
+    public void set_tcost(int x, int y, float c)
+    {
+        if(cost != null && valid_cost_pos(x, y))
+        {
+            cost[x][y] = c;
+            update_moves(x, y);
+        }
+    }
+    
+    /**
+     * Move the altitude values of a loaded DEM to start at 0 if there are negative ones
+     * (only if FORCE_POSITIVE_ELEVATION).
+     */
+    private void force_positive_elevation()
+    {
+        if(FORCE_POSITIVE_ELEVATION)
+        if(this.min_alt() < 0)
+        {
+            for(int i=0; i<cols; i++)
+                for(int j=0; j<rows; j++)
+                    if(dem[i][j].getZ() != Float.MIN_VALUE)
+                        dem[i][j].setZ(dem[i][j].getZ()-minalt);
+            minalt = 0;
+        }
+    }
+    
+    /**
+     * Check if a file is a binary map.
+     * @param file path of the file.
+     * @return True if the file starts with the identifier of the binary maps.
+     */
+    public static boolean is_binary_map(String file)
+    {
+        if(file == null)
+            return false;
+        byte id[] = new byte[BINARY_ID.length()];
+        try{
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try{
+                in.readFully(id);
+            }finally{
+                in.close();
+            }
+        }catch(IOException ioe){
+            return false;
+        }
+        return BINARY_ID.equals(new String(id, java.nio.charset.StandardCharsets.US_ASCII));
+    }
+    
+    /**
+     * Save the map in a binary file that can be loaded without parsing (see Map(String, String)).
+     * The file has a header of BINARY_HEADER bytes with the identifier, the version, the
+     * number of columns and rows of the DEM, the cornernode mode (1 or 0), the scale and
+     * the number of columns and rows of the traversal costs, followed by the Z values and
+     * the traversal costs by rows. All the values are 32 bits integers or floats in
+     * little-endian order.
+     * @param file path of the file.
+     * @return True if the file has been written.
+     */
+    public boolean save(String file)
+    {
+        if(!valid_dem() || !valid_cost_map())
+            return false;
+        int ccols = cost.length;
+        int crows = cost[0].length;
+        long zbytes = 4L * cols * rows;
+        try{
+            RandomAccessFile out = new RandomAccessFile(file, "rw");
+            try{
+                FileChannel ch = out.getChannel();
+                out.setLength(0);
+                out.setLength(BINARY_HEADER + zbytes + 4L * ccols * crows);
+                ByteBuffer header = ch.map(FileChannel.MapMode.READ_WRITE, 0, BINARY_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+                header.put(BINARY_ID.getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+                header.putInt(BINARY_VERSION).putInt(cols).putInt(rows).putInt(cornernode? 1 : 0);
+                header.putFloat(scale).putInt(ccols).putInt(crows);
+                float row[] = new float[cols];
+                FloatBuffer data = null;
+                long offset = BINARY_HEADER;
+                for(int j = 0; j < rows; j++)
+                {
+                    if(data == null || !data.hasRemaining())
+                    {
+                        data = map_rows(ch, FileChannel.MapMode.READ_WRITE, offset, cols, rows - j);
+                        offset += 4L * data.capacity();
+                    }
+                    for(int i = 0; i < cols; i++)
+                        row[i] = dem[i][j].getZ();
+                    data.put(row);
+                }
+                row = new float[ccols];
+                data = null;
+                for(int j = 0; j < crows; j++)
+                {
+                    if(data == null || !data.hasRemaining())
+                    {
+                        data = map_rows(ch, FileChannel.MapMode.READ_WRITE, offset, ccols, crows - j);
+                        offset += 4L * data.capacity();
+                    }
+                    for(int i = 0; i < ccols; i++)
+                        row[i] = cost[i][j];
+                    data.put(row);
+                }
+            }finally{
+                out.close();
+            }
+        }catch(IOException ioe){
+            System.out.println("Cannot write the map file "+file+": "+ioe.toString());
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Load the map from a binary file (see save). The file is mapped in memory by regions
+     * and the values are bulk copied into the DEM nodes and the cost matrix, without
+     * parsing, so the loaded map does not depend on the file. The altitude limits are
+     * calculated as for the text files.
+     * @param file path of the file.
+     * @return True if the map has been loaded.
+     */
+    private boolean load(String file)
+    {
+        try{
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try{
+                FileChannel ch = in.getChannel();
+                ByteBuffer header = ch.map(FileChannel.MapMode.READ_ONLY, 0, BINARY_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+                header.position(BINARY_ID.length());
+                int ver = header.getInt();
+                int ncols = header.getInt();
+                int nrows = header.getInt();
+                boolean dmode = header.getInt() != 0;
+                float sc = header.getFloat();
+                int ccols = header.getInt();
+                int crows = header.getInt();
+                if(ver != BINARY_VERSION || ncols < 1 || nrows < 1 || ccols != (dmode? ncols-1 : ncols) || crows != (dmode? nrows-1 : nrows)
+                   || ch.size() != BINARY_HEADER + 4L * ncols * nrows + 4L * ccols * crows)
+                {
+                    System.out.println("Invalid map file: "+file);
+                    return false;
+                }
+                initialize(ncols, nrows, dmode);
+                scale = sc;
+                float row[] = new float[cols];
+                FloatBuffer data = null;
+                long offset = BINARY_HEADER;
+                for(int j = 0; j < rows; j++)
+                {
+                    if(data == null || !data.hasRemaining())
+                    {
+                        data = map_rows(ch, FileChannel.MapMode.READ_ONLY, offset, cols, rows - j);
+                        offset += 4L * data.capacity();
+                    }
+                    data.get(row);
+                    for(int i = 0; i < cols; i++)
+                        dem[i][j] = new Node(i, j, row[i]);
+                }
+                row = new float[ccols];
+                data = null;
+                for(int j = 0; j < crows; j++)
+                {
+                    if(data == null || !data.hasRemaining())
+                    {
+                        data = map_rows(ch, FileChannel.MapMode.READ_ONLY, offset, ccols, crows - j);
+                        offset += 4L * data.capacity();
+                    }
+                    data.get(row);
+                    for(int i = 0; i < ccols; i++)
+                        cost[i][j] = row[i];
+                }
+            }finally{
+                in.close();
+            }
+        }catch(IOException ioe){
+            System.out.println("Cannot read the map file "+file+": "+ioe.toString());
+            return false;
+        }
+        force_positive_elevation();
+        min_alt();
+        max_alt();
+        update_moves();
+        return true;
+    }
+    
+    /**
+     * Map a region of whole rows of a binary map file, as large as possible up to BINARY_REGION bytes.
+     * @param ch channel of the file.
+     * @param mode mapping mode.
+     * @param offset position of the first row in the file.
+     * @param rowlen number of values of each row.
+     * @param nrows number of remaining rows.
+     * @return The values of the mapped rows.
+     * @throws IOException if the region cannot be mapped.
+     */
+    private static FloatBuffer map_rows(FileChannel ch, FileChannel.MapMode mode, long offset, int rowlen, int nrows) throws IOException
+    {
+        long n = Math.max(1, Math.min(nrows, BINARY_REGION / (4L * rowlen)));
+        return ch.map(mode, offset, 4L * rowlen * n).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+    
      /**
      * Create safety margin surrounding obstacles.
      * @param ncells
@@ -296,6 +634,7 @@ public class Map {
                     if(newcostmap[i][j] == 0)
                         newcostmap[i][j] = cost[i][j];
             cost = newcostmap;
+            update_moves();
             return true;
         }
         return false;
@@ -314,7 +653,31 @@ public class Map {
         else
             return null;
     }
-    
+
+    /**
+     * Get the linear index of a position of the grid, numbering the nodes by rows.
+     * @param col column or x position of the node [0,columns).
+     * @param row row or y position of the node [0,rows).
+     * @return The index row*columns+col, in [0,columns*rows).
+     */
+    public final int get_index(int col, int row)
+    {
+        return row * cols + col;
+    }
+
+    /**
+     * Get the node of the grid using its linear index (see get_index).
+     * @param index index of the node [0,columns*rows).
+     * @return The node or null if the index is not valid.
+     */
+    public Node get_node(int index)
+    {
+        if(index >= 0 && index < cols * rows)
+            return dem[index % cols][index / cols];
+        else
+            return null;
+    }
+
     /**
      * Obtain a list with the valid successors of a node. Not considers the cost matrix.
      * @param node node to get its successors.
@@ -339,27 +702,156 @@ public class Map {
      */
     public ArrayList get_succesors_without_obstacles(Node node)
     {
-        ArrayList<Node> temp = get_succesors(node);
-        if(cost == null) // Without cost nothing to do
-            return temp;
-        // Check if any succesor is unreachable due to cost matrix
-        int i = 0;
-        while(i < temp.size())
+        ArrayList<Node> temp = new ArrayList(NSUCCESSORS);
+        for(int d = 0; d < NSUCCESSORS; d++)
+            if(is_reachable(node.getX(), node.getY(), d))
+                temp.add(dem[node.getX()+DX[d]][node.getY()+DY[d]]);
+        return temp;
+    }
+    
+    /**
+     * Obtain the valid successors of a node considering the cost matrix (as
+     * get_succesors_without_obstacles) without allocate memory.
+     * @param index linear index of the node (see get_index).
+     * @param succ array with at least NSUCCESSORS elements to store the index of the successors.
+     * @return The number of successors stored in succ.
+     */
+    public int get_succesors(int index, int succ[])
+    {
+        int m = moves[index] & 0xFF;
+        int n = 0;
+        for(int d = 0; m != 0; d++, m >>= 1)
+            if((m & 1) != 0)
+                succ[n++] = index + DX[d] + DY[d] * cols;
+        return n;
+    }
+    
+    /**
+     * Obtain the successors of a node whose move has line of sight (see get_los_moves)
+     * without allocate memory.
+     * @param index linear index of the node (see get_index).
+     * @param succ array with at least NSUCCESSORS elements to store the index of the successors.
+     * @return The number of successors stored in succ.
+     */
+    public int get_los_succesors(int index, int succ[])
+    {
+        int m = get_los_moves(index);
+        int n = 0;
+        for(int d = 0; m != 0; d++, m >>= 1)
+            if((m & 1) != 0)
+                succ[n++] = index + DX[d] + DY[d] * cols;
+        return n;
+    }
+    
+    /**
+     * Check if a node has at least one reachable successor considering the cost matrix.
+     * @param node node to check.
+     * @return True if there is any reachable successor.
+     */
+    public boolean has_succesors(Node node)
+    {
+        return moves[get_index(node.getX(), node.getY())] != 0;
+    }
+    
+    /**
+     * Check if the successor of a node in a given direction is reachable: the position
+     * is valid, the successor is not an obstacle and the traversal cost of the move is
+     * not greater than MAX_COST (for center-node the cost of the successor, for corner-node
+     * the cost between both nodes).
+     * @param x x position of the node.
+     * @param y y position of the node.
+     * @param dir direction of the successor [0,NSUCCESSORS) (see DX and DY).
+     * @return True if the successor is reachable.
+     */
+    public boolean is_reachable(int x, int y, int dir)
+    {
+        return (moves[get_index(x, y)] & (1 << dir)) != 0;
+    }
+    
+    /**
+     * Get the allowed moves of a node (see is_reachable).
+     * @param x x position of the node.
+     * @param y y position of the node.
+     * @return A mask with bit d set if the successor in direction d is reachable.
+     */
+    public int get_moves(int x, int y)
+    {
+        return moves[get_index(x, y)] & 0xFF;
+    }
+    
+    /**
+     * Get the allowed moves of a node that also have line of sight between both nodes
+     * (see Geometry.LineOfSightB), that are the moves with a valid cost for the search
+     * algorithms (see SearchMethod.get_g). Calculated the first time they are required.
+     * @param index linear index of the node.
+     * @return A mask with bit d set if the successor in direction d is reachable and visible.
+     */
+    public int get_los_moves(int index)
+    {
+        if(losmoves == null)
         {
-            if(!cornernode)
+            // Without costs or in cornernode mode the line of sight checks the same cells than the moves
+            if(cost == null || cornernode)
+                losmoves = moves;
+            else
             {
-                if(cost[temp.get(i).getX()][temp.get(i).getY()] > MAX_COST) // Cost greater than MAX_COST is an obstacle
-                    temp.remove(i);
-                else
-                    i++;
+                losmoves = new byte[cols*rows];
+                for(int j = 0; j < rows; j++)
+                    for(int i = 0; i < cols; i++)
+                        losmoves[get_index(i, j)] = compute_los_moves(i, j);
             }
-            else
-                if(get_tcost(node.getX(), node.getY(), temp.get(i).getX(), temp.get(i).getY()) > MAX_COST)
-                    temp.remove(i);
-                else
-                    i++;
         }
-        return temp;
+        return losmoves[index] & 0xFF;
+    }
+    
+    /**
+     * Get the allowed moves of a node with line of sight (see get_los_moves(int)).
+     * @param x x position of the node.
+     * @param y y position of the node.
+     * @return A mask with bit d set if the successor in direction d is reachable and visible.
+     */
+    public int get_los_moves(int x, int y)
+    {
+        return get_los_moves(get_index(x, y));
+    }
+    
+    /**
+     * Calculate the allowed moves of a node with line of sight between both nodes.
+     * @param x x position of the node.
+     * @param y y position of the node.
+     * @return A mask with bit d set if the successor in direction d is reachable and visible.
+     */
+    private byte compute_los_moves(int x, int y)
+    {
+        int m = moves[get_index(x, y)] & 0xFF;
+        for(int d = 0; d < NSUCCESSORS; d++)
+            if((m & (1 << d)) != 0 && !Geometry.LineOfSightB(this, dem[x][y], dem[x+DX[d]][y+DY[d]]))
+                m &= ~(1 << d);
+        return (byte)m;
+    }
+    
+    /**
+     * Calculate the allowed moves of a node using the DEM and the cost matrix.
+     * @param x x position of the node.
+     * @param y y position of the node.
+     * @return A mask with bit d set if the successor in direction d is reachable.
+     */
+    private byte compute_moves(int x, int y)
+    {
+        int m = 0;
+        int i, j;
+        for(int d = 0; d < NSUCCESSORS; d++)
+        {
+            i = x + DX[d];
+            j = y + DY[d];
+            if(!valid_pos(i, j) || dem[i][j].isObstacle())
+                continue;
+            if(cost == null // Without cost nothing to do
+               || (!cornernode && cost[i][j] <= MAX_COST) // Cost greater than MAX_COST is an obstacle
+               || (cornernode && get_tcost(x, y, i, j) <= MAX_COST))
+                m |= 1 << d;
+        }
+        return (byte)m;
     }
 
     /** 
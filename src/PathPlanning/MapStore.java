@@ -0,0 +1,194 @@
+package PathPlanning;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Maps loaded by the path-planning daemon, so the following sessions with the same
+ * files do not read them again. A map is identified by the paths of its files, their
+ * modification times and the safety margin of the obstacles (see Map.expand_costmap),
+ * so a modified file is loaded again. When the estimated memory of the maps exceeds
+ * the budget the least recently used maps are removed.
+ * The maps are not modified by the sessions (the searches only read them).
+ */
+public class MapStore {
+
+    /** Estimated memory of each cell of a map in bytes (node, costs and moves). */
+    public static final int CELL_BYTES = 64;
+
+    /** Maps in order of use, from the least recently used. */
+    private LinkedHashMap maps;
+    /** Maximum estimated memory of the maps in bytes. */
+    private long budget;
+    /** Estimated memory of the stored maps in bytes. */
+    private long used;
+    /** Number of maps obtained without loading them. */
+    private long hits;
+    /** Number of maps loaded. */
+    private long misses;
+
+    /**
+     * Constructor for MapStore class.
+     * @param budget maximum estimated memory of the maps in bytes. The last map
+     * used is always kept, even if it is bigger.
+     */
+    public MapStore(long budget)
+    {
+        this.budget = budget;
+        maps = new LinkedHashMap(16, 0.75f, true);
+    }
+
+    /**
+     * Get a map, loading it if it is not stored or its files have changed.
+     * @param zfile DEM file.
+     * @param cfile traversal costs file.
+     * @param margin safety margin (number of cells) around the obstacles, 0 for none.
+     * @return The map (it must not be modified) or null if it is not valid.
+     */
+    public synchronized Map get(String zfile, String cfile, short margin)
+    {
+        String key = key(zfile, cfile, margin);
+        Map map = (Map)maps.get(key);
+        if(map != null)
+        {
+            hits++;
+            return map;
+        }
+        misses++;
+        // Old versions of the files are not used again
+        remove(zfile, cfile);
+        map = new Map(zfile, cfile);
+        if(!map.valid_dem() && !map.valid_cost_map())
+            return null;
+        if(margin > 0)
+            map.expand_costmap(margin);
+        // Moves are calculated the first time they are required: before sharing the map
+        map.get_los_moves(0);
+        maps.put(key, map);
+        used += size(map);
+        evict(map);
+        return map;
+    }
+
+    /**
+     * @return The number of stored maps.
+     */
+    public synchronized int size()
+    {
+        return maps.size();
+    }
+
+    /**
+     * @return The estimated memory of the stored maps in bytes.
+     */
+    public synchronized long get_used()
+    {
+        return used;
+    }
+
+    /**
+     * @return The number of maps obtained without loading them.
+     */
+    public synchronized long get_hits()
+    {
+        return hits;
+    }
+
+    /**
+     * @return The number of maps loaded.
+     */
+    public synchronized long get_misses()
+    {
+        return misses;
+    }
+
+    /**
+     * Remove all the maps.
+     */
+    public synchronized void clear()
+    {
+        maps.clear();
+        used = 0;
+    }
+
+    /**
+     * Estimate the memory of a map.
+     * @param map terrain info.
+     * @return The estimated memory in bytes.
+     */
+    public static long size(Map map)
+    {
+        return (long)map.get_cols() * map.get_rows() * CELL_BYTES;
+    }
+
+    /**
+     * Remove the least recently used maps until the memory is under the budget.
+     * @param keep map that is not removed.
+     */
+    private void evict(Map keep)
+    {
+        Iterator it = maps.values().iterator();
+        Map map;
+        while(used > budget && it.hasNext())
+        {
+            map = (Map)it.next();
+            if(map == keep)
+                continue;
+            used -= size(map);
+            it.remove();
+        }
+    }
+
+    /**
+     * Remove the maps of the same files with any modification time or margin.
+     * @param zfile DEM file.
+     * @param cfile traversal costs file.
+     */
+    private void remove(String zfile, String cfile)
+    {
+        String prefix = path(zfile) + "\n" + path(cfile) + "\n";
+        Iterator it = maps.entrySet().iterator();
+        java.util.Map.Entry entry;
+        while(it.hasNext())
+        {
+            entry = (java.util.Map.Entry)it.next();
+            if(((String)entry.getKey()).startsWith(prefix) && !((String)entry.getKey()).startsWith(prefix + modified(zfile) + "\n" + modified(cfile) + "\n"))
+            {
+                used -= size((Map)entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the key of a map.
+     * @param zfile DEM file.
+     * @param cfile traversal costs file.
+     * @param margin safety margin.
+     * @return The key: paths, modification times and margin.
+     */
+    private static String key(String zfile, String cfile, short margin)
+    {
+        return path(zfile) + "\n" + path(cfile) + "\n" + modified(zfile) + "\n" + modified(cfile) + "\n" + margin;
+    }
+
+    /**
+     * @param file file name.
+     * @return The absolute path of the file.
+     */
+    private static String path(String file)
+    {
+        return new File(file).getAbsolutePath();
+    }
+
+    /**
+     * @param file file name.
+     * @return The modification time of the file, 0 if it does not exist.
+     */
+    private static long modified(String file)
+    {
+        return new File(file).lastModified();
+    }
+
+}
@@ -65,6 +65,19 @@ public class Node implements Comparable {
         parent = n.getParent();
     }
     
+    /**
+     * Set the search values (F, G, H, A, parent and expanded) to the initial values.
+     */
+    public void reset()
+    {
+        F = Float.MAX_VALUE;
+        G = Float.MAX_VALUE;
+        H = 0;
+        A = -1;
+        expanded = false;
+        parent = null;
+    }
+    
     /**
      * Change the tie break flag for all nodes. Initially set to true.
      */
@@ -72,6 +85,14 @@ public class Node implements Comparable {
     {
         LESS_H_FIRST = !LESS_H_FIRST;
     }
+    
+    /**
+     * @return The tie break flag: true if the node with less H goes first when the F values are equal.
+     */
+    public static boolean GetTieBreakingFlag()
+    {
+        return LESS_H_FIRST;
+    }
 
     /**
      * Comparison between nodes. 
@@ -82,22 +103,35 @@ public class Node implements Comparable {
      */
     @Override
     public int compareTo(Object no)
+    {
+        Node n = (Node)no;
+        return compare(F, H, n.getF(), n.getH());
+    }
+    
+    /**
+     * Comparison between two F and H pairs using the tie breaking flag (see compareTo).
+     * @param f1 F value of the first element.
+     * @param h1 H value of the first element.
+     * @param f2 F value of the second element.
+     * @param h2 H value of the second element.
+     * @return -1 if the first element is less than the second, 1 if greater and 0 if equals.
+     */
+    public static int compare(float f1, float h1, float f2, float h2)
     {
         final int BEFORE =-1;
         final int EQUAL  = 0;
         final int AFTER  = 1;
-        Node n = (Node)no;
-        if(n.getF() < F) return AFTER;
-        if(n.getF() > F) return BEFORE;
-        if(n.getH() == H) return EQUAL;
+        if(f2 < f1) return AFTER;
+        if(f2 > f1) return BEFORE;
+        if(h2 == h1) return EQUAL;
         if(LESS_H_FIRST)
         {
-            if(n.getH() < H) return AFTER;
+            if(h2 < h1) return AFTER;
             else return BEFORE;
         }
         else
         {
-            if(n.getH() > H) return AFTER;
+            if(h2 > h1) return AFTER;
             else return BEFORE;
         }
     }
@@ -0,0 +1,255 @@
+package PathPlanning;
+
+/**
+ * Open list for the search algorithms implemented as an indexed binary heap of
+ * cell indexes (see Map.get_index). The position of each cell in the heap is
+ * stored, so it is possible to test if a cell is open and to change its priority
+ * (decrease-key) without traversing the list.
+ * Cells are sorted using the F and H values of the search state with the same
+ * criteria than {@link Node#compareTo}. Cells that are equal for the comparison
+ * keep their insertion order, being a cell whose priority is updated considered
+ * as a new insertion (as a stable sort of an appended list does).
+ */
+public class OpenList {
+
+    /** Initial capacity of the heap. */
+    private static final int INITIAL_CAPACITY = 256;
+    /** Binary heap with the open cells. */
+    private int heap[];
+    /** Insertion order of each element of the heap, used when cells are equal. */
+    private long order[];
+    /** Position in the heap (plus one) for each cell of the map, 0 if the cell is not open. */
+    private int index[];
+    /** Number of cells in the open list. */
+    private int size;
+    /** Search state with the values of the cells. */
+    private SearchState state;
+    /** Insertion counter. */
+    private long counter;
+
+    /**
+     * Create an empty open list for the cells of a map.
+     * @param map map with the cells to be stored in the list.
+     * @param st search state with the F and H values of the cells.
+     */
+    public OpenList(Map map, SearchState st)
+    {
+        state = st;
+        heap = new int[INITIAL_CAPACITY];
+        order = new long[INITIAL_CAPACITY];
+        index = new int[map.get_cols() * map.get_rows()];
+        size = 0;
+        counter = 0;
+    }
+
+    /**
+     * Insert a cell in the open list. If the cell is already open its position
+     * is updated as in {@link #update(int)}.
+     * @param id cell index.
+     */
+    public void add(int id)
+    {
+        if(index[id] != 0)
+        {
+            update(id);
+            return;
+        }
+        if(size == heap.length)
+        {
+            heap = java.util.Arrays.copyOf(heap, size * 2);
+            order = java.util.Arrays.copyOf(order, size * 2);
+        }
+        heap[size] = id;
+        order[size] = counter++;
+        index[id] = size + 1;
+        sift_up(size++);
+    }
+
+    /**
+     * Reorder a cell after change its F or H value. If the cell is not in
+     * the open list, it is inserted.
+     * @param id cell index.
+     */
+    public void update(int id)
+    {
+        int pos = index[id] - 1;
+        if(pos < 0)
+        {
+            add(id);
+            return;
+        }
+        order[pos] = counter++;
+        sift_down(sift_up(pos));
+    }
+
+    /**
+     * Extract the best cell of the list.
+     * @return The index of the cell with the lowest value or -1 if the list is empty.
+     */
+    public int poll()
+    {
+        if(size == 0)
+            return -1;
+        int first = heap[0];
+        remove_at(0);
+        return first;
+    }
+
+    /**
+     * @return The index of the cell with the lowest value (without extracting it) or -1 if the list is empty.
+     */
+    public int peek()
+    {
+        return size == 0? -1 : heap[0];
+    }
+
+    /**
+     * Delete a cell from the open list.
+     * @param id cell index.
+     * @return true if the cell was in the list.
+     */
+    public boolean remove(int id)
+    {
+        int pos = index[id] - 1;
+        if(pos < 0)
+            return false;
+        remove_at(pos);
+        return true;
+    }
+
+    /**
+     * Test if a cell is in the open list.
+     * @param id cell index.
+     * @return true if the cell is open.
+     */
+    public boolean contains(int id)
+    {
+        return index[id] != 0;
+    }
+
+    /**
+     * Access to an element of the heap (not sorted, used for debug).
+     * @param i position in the heap [0,size).
+     * @return The index of the cell stored in that position.
+     */
+    public int get(int i)
+    {
+        return heap[i];
+    }
+
+    /**
+     * @return Number of cells in the open list.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return true if there are no open cells.
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Delete all the cells of the list. Cost is proportional to the number of open cells.
+     */
+    public void clear()
+    {
+        for(int i = 0; i < size; i++)
+            index[heap[i]] = 0;
+        size = 0;
+        counter = 0;
+    }
+
+    /**
+     * Remove the element of a heap position and restore the heap.
+     * @param pos position to remove.
+     */
+    private void remove_at(int pos)
+    {
+        index[heap[pos]] = 0;
+        size--;
+        if(pos != size)
+        {
+            move(size, pos);
+            sift_down(sift_up(pos));
+        }
+    }
+
+    /**
+     * Compare two elements of the heap.
+     * @return less than 0 if element i goes before element j.
+     */
+    private int compare(int i, int j)
+    {
+        int c = state.compare(heap[i], heap[j]);
+        if(c != 0)
+            return c;
+        return order[i] < order[j]? -1 : (order[i] == order[j]? 0 : 1);
+    }
+
+    /**
+     * Move an element of the heap from one position to another one.
+     */
+    private void move(int from, int to)
+    {
+        heap[to] = heap[from];
+        order[to] = order[from];
+        index[heap[to]] = to + 1;
+    }
+
+    /**
+     * Swap two elements of the heap.
+     */
+    private void swap(int i, int j)
+    {
+        int id = heap[i];
+        long o = order[i];
+        move(j, i);
+        heap[j] = id;
+        order[j] = o;
+        index[id] = j + 1;
+    }
+
+    /**
+     * Move up an element while it is better than its parent.
+     * @param pos initial position of the element.
+     * @return Final position of the element.
+     */
+    private int sift_up(int pos)
+    {
+        while(pos > 0)
+        {
+            int parent = (pos - 1) / 2;
+            if(compare(pos, parent) >= 0)
+                break;
+            swap(pos, parent);
+            pos = parent;
+        }
+        return pos;
+    }
+
+    /**
+     * Move down an element while any child is better.
+     * @param pos initial position of the element.
+     * @return Final position of the element.
+     */
+    private int sift_down(int pos)
+    {
+        int child;
+        while((child = 2 * pos + 1) < size)
+        {
+            if(child + 1 < size && compare(child + 1, child) < 0)
+                child++;
+            if(compare(child, pos) >= 0)
+                break;
+            swap(pos, child);
+            pos = child;
+        }
+        return pos;
+    }
+
+}
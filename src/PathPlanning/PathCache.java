@@ -0,0 +1,306 @@
+package PathPlanning;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Bounded cache of the results of the path-planning queries (cost, degrees and
+ * path), indexed by a key that packs the cells of the query and some flags in a long
+ * value (see key). When the cache is full the least recently used entry is replaced.
+ * The entries are stored in arrays: a hash table with linear probing gives the entry
+ * of each key, and the entries are linked in order of use.
+ * Paths are stored as the indexes of its cells in the map.
+ */
+public class PathCache {
+
+    /** Number of bits of each cell index of a key. */
+    public static final int CELL_BITS = 27;
+    /** Number of bits of the flags of a key. */
+    public static final int FLAG_BITS = 9;
+    /** Mark of an empty position of the hash table. */
+    private static final int EMPTY = -1;
+
+    /** Terrain info. */
+    private Map map;
+    /** Entry of each position of the hash table. */
+    private int table[];
+    /** Key of each entry. */
+    private long keys[];
+    /** Cost of each entry. */
+    private float costs[];
+    /** Degrees of each entry. */
+    private float degrees[];
+    /** Path of each entry, null if it is not stored. */
+    private int paths[][];
+    /** Previous entry in order of use (more recently used). */
+    private int prev[];
+    /** Next entry in order of use (less recently used). */
+    private int next[];
+    /** Most recently used entry. */
+    private int head;
+    /** Least recently used entry. */
+    private int tail;
+    /** Number of entries. */
+    private int size;
+    /** Number of lookups that found the key. */
+    private long hits;
+    /** Number of lookups that did not find the key. */
+    private long misses;
+
+    /**
+     * Constructor for PathCache class.
+     * @param dem terrain info (see valid_map).
+     * @param capacity maximum number of entries.
+     */
+    public PathCache(Map dem, int capacity)
+    {
+        map = dem;
+        capacity = Math.max(1, capacity);
+        keys = new long[capacity];
+        costs = new float[capacity];
+        degrees = new float[capacity];
+        paths = new int[capacity][];
+        prev = new int[capacity];
+        next = new int[capacity];
+        // At most half of the hash table is used
+        table = new int[Integer.highestOneBit(capacity) * 4];
+        clear();
+    }
+
+    /**
+     * Check if a map can be indexed with the keys of the cache.
+     * @param map terrain info.
+     * @return True if the indexes of all the cells fit in a key.
+     */
+    public static boolean valid_map(Map map)
+    {
+        return (long)map.get_cols() * map.get_rows() <= (1L << CELL_BITS);
+    }
+
+    /**
+     * Pack the cells and the flags of a query in a key.
+     * @param start index of the first cell.
+     * @param goal index of the second cell.
+     * @param flags flags of the query (less than 2^FLAG_BITS).
+     * @return The key of the query.
+     */
+    public static long key(int start, int goal, int flags)
+    {
+        return ((long)flags << (2 * CELL_BITS)) | ((long)start << CELL_BITS) | goal;
+    }
+
+    /**
+     * Remove all the entries. The counters are not modified.
+     */
+    public final void clear()
+    {
+        Arrays.fill(table, EMPTY);
+        Arrays.fill(paths, null);
+        head = tail = EMPTY;
+        size = 0;
+    }
+
+    /**
+     * Search the entry of a key, that becomes the most recently used one.
+     * @param key key of the query.
+     * @return The entry of the key or -1 if the key is not in the cache.
+     */
+    public int find(long key)
+    {
+        int e = table[slot(key)];
+        if(e == EMPTY)
+        {
+            misses++;
+            return -1;
+        }
+        hits++;
+        unlink(e);
+        link(e);
+        return e;
+    }
+
+    /**
+     * Store the result of a query, replacing the least recently used entry if the
+     * cache is full.
+     * @param key key of the query.
+     * @param cost cost of the path.
+     * @param deg degrees of the path.
+     * @param path path (list of nodes), or null to store the cost only.
+     */
+    public void put(long key, float cost, float deg, ArrayList path)
+    {
+        int s = slot(key);
+        int e = table[s];
+        if(e != EMPTY)
+            unlink(e);
+        else
+        {
+            if(size == keys.length)
+            {
+                // Replace the least recently used entry
+                e = tail;
+                unlink(e);
+                remove_slot(slot(keys[e]));
+                s = slot(key);
+            }
+            else
+                e = size++;
+            keys[e] = key;
+            table[s] = e;
+        }
+        costs[e] = cost;
+        degrees[e] = deg;
+        paths[e] = null;
+        if(path != null)
+        {
+            paths[e] = new int[path.size()];
+            Node n;
+            for(int i = 0; i < path.size(); i++)
+            {
+                n = (Node)path.get(i);
+                paths[e][i] = map.get_index(n.getX(), n.getY());
+            }
+        }
+        link(e);
+    }
+
+    /**
+     * @param entry entry of the cache (see find).
+     * @return The cost stored in the entry.
+     */
+    public float get_cost(int entry)
+    {
+        return costs[entry];
+    }
+
+    /**
+     * @param entry entry of the cache (see find).
+     * @return The degrees stored in the entry.
+     */
+    public float get_degrees(int entry)
+    {
+        return degrees[entry];
+    }
+
+    /**
+     * Get the path stored in an entry.
+     * @param entry entry of the cache (see find).
+     * @return The path (list of nodes) or null if the entry has no path.
+     */
+    public ArrayList get_path(int entry)
+    {
+        if(paths[entry] == null)
+            return null;
+        ArrayList path = new ArrayList(paths[entry].length);
+        for(int i = 0; i < paths[entry].length; i++)
+            path.add(map.get_node(paths[entry][i]));
+        return path;
+    }
+
+    /**
+     * @return The number of entries.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return The number of lookups that found the key.
+     */
+    public long get_hits()
+    {
+        return hits;
+    }
+
+    /**
+     * @return The number of lookups that did not find the key.
+     */
+    public long get_misses()
+    {
+        return misses;
+    }
+
+    /**
+     * Get the position of the hash table for a key: the position of the key or the
+     * empty position where it must be inserted.
+     * @param key key of the query.
+     * @return The position of the hash table.
+     */
+    private int slot(long key)
+    {
+        int mask = table.length - 1;
+        int s = home(key);
+        while(table[s] != EMPTY && keys[table[s]] != key)
+            s = (s + 1) & mask;
+        return s;
+    }
+
+    /**
+     * Get the first position of the probe sequence of a key (multiplicative hashing).
+     * @param key key of the query.
+     * @return The position of the hash table.
+     */
+    private int home(long key)
+    {
+        return (int)((key * 0x9E3779B97F4A7C15L) >>> 32) & (table.length - 1);
+    }
+
+    /**
+     * Remove a position of the hash table, moving back the following keys of the
+     * probe sequence so they can be found.
+     * @param s position to remove.
+     */
+    private void remove_slot(int s)
+    {
+        int mask = table.length - 1;
+        int i = s, home;
+        table[s] = EMPTY;
+        while(true)
+        {
+            i = (i + 1) & mask;
+            if(table[i] == EMPTY)
+                return;
+            home = home(keys[table[i]]);
+            // Move the key if its home position is not between the empty position and i
+            if(((i - home) & mask) >= ((i - s) & mask))
+            {
+                table[s] = table[i];
+                table[i] = EMPTY;
+                s = i;
+            }
+        }
+    }
+
+    /**
+     * Insert an entry as the most recently used one.
+     * @param e entry.
+     */
+    private void link(int e)
+    {
+        prev[e] = EMPTY;
+        next[e] = head;
+        if(head != EMPTY)
+            prev[head] = e;
+        head = e;
+        if(tail == EMPTY)
+            tail = e;
+    }
+
+    /**
+     * Remove an entry from the order of use.
+     * @param e entry.
+     */
+    private void unlink(int e)
+    {
+        if(prev[e] != EMPTY)
+            next[prev[e]] = next[e];
+        else
+            head = next[e];
+        if(next[e] != EMPTY)
+            prev[next[e]] = prev[e];
+        else
+            tail = prev[e];
+    }
+
+}
@@ -0,0 +1,164 @@
+package PathPlanning;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Long-lived path planner that serves the sessions of several FF executions, so
+ * the maps (see MapStore) and the compiled code are kept between them.
+ * The sessions are requested by pathplanning.sh through a named pipe, with a line
+ * that contains (separated by tabs) the named pipe for the output of the session,
+ * the working directory of FF, the protocol and transport variables of FF (as
+ * NAME=value, see TaskPlannerConnect) and the arguments of the task planner
+ * connection (see Main). The output of the session is written to its pipe, and the
+ * last line is "#EXIT status", with the exit status of the path planner.
+ * The sessions are served one by one, because they share the pipes with FF.
+ */
+public class PlannerDaemon {
+
+    /** Named pipe of the session requests. */
+    public static final String REQUESTS = "/tmp/tuberia-pathplanning";
+    /** Last line of the output of a session. */
+    public static final String EXIT = "#EXIT ";
+
+    /** Maps loaded by the sessions. */
+    private MapStore maps;
+    /** Tie breaking flag of the nodes at the start (see Node.ChangeTieBreakingFlag). */
+    private boolean tiebreak;
+
+    /**
+     * Constructor for PlannerDaemon class.
+     * @param budget maximum estimated memory of the loaded maps in bytes.
+     */
+    public PlannerDaemon(long budget)
+    {
+        maps = new MapStore(budget);
+        tiebreak = Node.GetTieBreakingFlag();
+    }
+
+    /**
+     * Serve the sessions until the process is finished.
+     * @return False if the named pipe of the requests cannot be created.
+     */
+    public boolean run()
+    {
+        if(!create_pipe(REQUESTS))
+            return false;
+        System.out.println("#daemon: waiting sessions on "+REQUESTS);
+        String line;
+        BufferedReader requests;
+        while(true)
+        {
+            // Each open finishes when all the clients close the pipe
+            try{
+                requests = new BufferedReader(new FileReader(REQUESTS));
+                while((line = requests.readLine()) != null)
+                    serve(line);
+                requests.close();
+            }catch(IOException ioe){
+                System.out.println("Problem reading sessions: "+ioe.toString());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Serve a session.
+     * @param line request of the session.
+     */
+    private void serve(String line)
+    {
+        String fields[] = line.split("\t");
+        ArrayList args = new ArrayList();
+        HashMap env = new HashMap();
+        int eq;
+        for(int i = 2; i < fields.length; i++)
+        {
+            eq = fields[i].indexOf('=');
+            if(fields[i].startsWith(TaskPlannerConnect.PROTOCOL+"=") || fields[i].startsWith(TaskPlannerConnect.TRANSPORT+"="))
+                env.put(fields[i].substring(0, eq), fields[i].substring(eq+1));
+            else if(!fields[i].isEmpty())
+                args.add(fields[i]);
+        }
+        if(fields.length < 2 || args.size() < 3)
+        {
+            System.out.println("Invalid session request: "+line);
+            return;
+        }
+        // Files relative to the working directory of FF (DEM, costs and PDDL problem)
+        String cwd = fields[1];
+        for(int i = 1; i < args.size(); i++)
+            if(i != 3)
+                args.set(i, resolve(cwd, (String)args.get(i)));
+        PrintStream stdout = System.out;
+        PrintStream out;
+        try{
+            out = new PrintStream(new FileOutputStream(fields[0]), false);
+        }catch(IOException ioe){
+            System.out.println("Cannot open session output: "+ioe.toString());
+            return;
+        }
+        // Searches created by previous sessions may change the flag
+        if(Node.GetTieBreakingFlag() != tiebreak)
+            Node.ChangeTieBreakingFlag();
+        int status;
+        System.setOut(out);
+        try{
+            status = Main.plan((String[])args.toArray(new String[args.size()]), maps, env);
+        }catch(OutOfMemoryError oom){
+            maps.clear();
+            System.out.println("Out of memory, maps released.");
+            status = -1;
+        }catch(RuntimeException re){
+            System.out.println(re.toString());
+            status = -1;
+        }
+        System.out.println();
+        System.out.println(EXIT+status);
+        System.setOut(stdout);
+        out.close();
+        System.out.println("#session: "+args.get(1)+" status "+status+", "+maps.size()+" maps ("+(maps.get_used()>>20)+" MB), "+maps.get_hits()+" hits, "+maps.get_misses()+" loads");
+    }
+
+    /**
+     * Get the path of a file relative to a directory.
+     * @param dir directory.
+     * @param file file name, "-" for no file.
+     * @return The path of the file.
+     */
+    private static String resolve(String dir, String file)
+    {
+        if(file.equals("-") || new File(file).isAbsolute())
+            return file;
+        return new File(dir, file).getPath();
+    }
+
+    /**
+     * Create a named pipe if it does not exist.
+     * @param name path of the pipe.
+     * @return True if the pipe exists or it has been created.
+     */
+    private static boolean create_pipe(String name)
+    {
+        if(new File(name).exists())
+            return true;
+        try{
+            Process p = new ProcessBuilder("mkfifo", "-m", "666", name).inheritIO().start();
+            if(p.waitFor() == 0)
+                return true;
+        }catch(IOException ioe){
+            System.out.println(ioe.toString());
+        }catch(InterruptedException ie){
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("Cannot create "+name);
+        return false;
+    }
+
+}
@@ -0,0 +1,338 @@
+package PathPlanning;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of workers to solve several path-planning queries at the same time.
+ * Each worker has its own searches (and search state) over the same map, that is
+ * only read during the searches. The searches of a worker are created the first
+ * time the worker is used, so a pool only used with single queries does not require
+ * more memory than one search.
+ * The results are stored in the queries, so they are obtained in the same order
+ * than the queries are received.
+ */
+public class QueryPool {
+
+    /** Terrain info. */
+    private Map map;
+    /** Creates the searches of the workers. */
+    private Factory factory;
+    /** Search used for path queries by each worker. */
+    private SearchMethod planners[];
+    /** Search used for cost queries by each worker. */
+    private SearchMethod greedies[];
+    /** Search used for multi-target cost queries by each worker, null until it is used. */
+    private Dijkstra dijkstras[];
+    /** True to post-process the paths (A*PS). */
+    private boolean postprocess;
+    /** Threads of the workers, null until the first batch of queries. */
+    private ExecutorService executor;
+
+    /**
+     * Creates the searches of the workers.
+     */
+    public static abstract class Factory {
+
+        /**
+         * @return A new search for path queries.
+         */
+        public abstract SearchMethod new_planner();
+
+        /**
+         * Create a new search for cost queries.
+         * @param planner search for path queries of the same worker.
+         * @return The search for cost queries (it can be the planner).
+         */
+        public abstract SearchMethod new_greedy(SearchMethod planner);
+    }
+
+    /**
+     * A path or cost query and its result.
+     */
+    public static class Query {
+
+        /** Start point. */
+        Node start;
+        /** Goal point. */
+        Node goal;
+        /** True for a path query (planner), false for a cost query. */
+        boolean withpath;
+        /** True if a path has been found. */
+        boolean found;
+        /** Cost of the path. */
+        float cost;
+        /** Degrees of the path (path queries). */
+        float degrees;
+        /** Path found (path queries), from start to goal. */
+        ArrayList path;
+        /** Goal points of a multi-target cost query, null for other queries. */
+        Node goals[];
+        /** Cost to each goal of a multi-target cost query, -1 if there is no path. */
+        float costs[];
+
+        /**
+         * Constructor for Query class.
+         * @param start start point.
+         * @param goal goal point.
+         * @param withpath true for a path query, false for a cost query.
+         */
+        public Query(Node start, Node goal, boolean withpath)
+        {
+            this.start = start;
+            this.goal = goal;
+            this.withpath = withpath;
+        }
+
+        /**
+         * Constructor for a multi-target cost query, solved with a single Dijkstra
+         * search (optimal costs, see Dijkstra.search(Node[])).
+         * @param start start point.
+         * @param goals goal points.
+         */
+        public Query(Node start, Node goals[])
+        {
+            this.start = start;
+            this.goal = start;
+            this.goals = goals;
+        }
+
+        /**
+         * @return True if a path has been found.
+         */
+        public boolean found()
+        {
+            return found;
+        }
+
+        /**
+         * @return The cost of the path.
+         */
+        public float get_cost()
+        {
+            return cost;
+        }
+
+        /**
+         * @return The degrees of the path.
+         */
+        public float get_degrees()
+        {
+            return degrees;
+        }
+
+        /**
+         * @return The path found (path queries only).
+         */
+        public ArrayList get_path()
+        {
+            return path;
+        }
+
+        /**
+         * @return The cost to each goal of a multi-target query (-1 if there is no path).
+         */
+        public float[] get_costs()
+        {
+            return costs;
+        }
+    }
+
+    /**
+     * Constructor for QueryPool class.
+     * @param dem terrain info.
+     * @param planner search for path queries of the first worker.
+     * @param greedy search for cost queries of the first worker.
+     * @param postprocess true to post-process the paths found by the planners (A*PS).
+     * @param factory creates the searches of the other workers.
+     * @param nworkers number of workers, 0 to use one worker per available processor.
+     */
+    public QueryPool(Map dem, SearchMethod planner, SearchMethod greedy, boolean postprocess, Factory factory, int nworkers)
+    {
+        if(nworkers <= 0)
+            nworkers = Runtime.getRuntime().availableProcessors();
+        map = dem;
+        this.factory = factory;
+        this.postprocess = postprocess;
+        planners = new SearchMethod[nworkers];
+        greedies = new SearchMethod[nworkers];
+        dijkstras = new Dijkstra[nworkers];
+        planners[0] = planner;
+        greedies[0] = greedy;
+    }
+
+    /**
+     * @return The number of workers.
+     */
+    public int size()
+    {
+        return planners.length;
+    }
+
+    /**
+     * Solve a set of queries, using all the workers if there are several queries.
+     * @param queries queries, the results are stored in them.
+     */
+    public void solve(final Query queries[])
+    {
+        int nworkers = Math.min(planners.length, queries.length);
+        if(nworkers <= 1)
+        {
+            for(int i = 0; i < queries.length; i++)
+                solve(queries[i], 0);
+            return;
+        }
+        create_workers(nworkers);
+        if(executor == null)
+        {
+            // Moves are calculated the first time they are required: before sharing the map
+            map.get_los_moves(0);
+            executor = Executors.newFixedThreadPool(planners.length - 1);
+        }
+        final AtomicInteger next = new AtomicInteger();
+        Future pending[] = new Future[nworkers - 1];
+        for(int w = 1; w < nworkers; w++)
+        {
+            final int worker = w;
+            pending[w-1] = executor.submit(new Runnable() {
+                @Override
+                public void run()
+                {
+                    int i;
+                    while((i = next.getAndIncrement()) < queries.length)
+                        solve(queries[i], worker);
+                }
+            });
+        }
+        // The calling thread is the first worker
+        int i;
+        while((i = next.getAndIncrement()) < queries.length)
+            solve(queries[i], 0);
+        try{
+            for(int w = 0; w < pending.length; w++)
+                pending[w].get();
+        }catch(InterruptedException ie){
+            Thread.currentThread().interrupt();
+        }catch(ExecutionException ee){
+            throw new RuntimeException(ee.getCause());
+        }
+    }
+
+    /**
+     * Create the searches of the workers that are used for the first time. Some
+     * constructors change the tie breaking flag of the nodes (see Node.ChangeTieBreakingFlag),
+     * that is shared by all the searches, so the flag is restored after creating them.
+     * @param nworkers number of workers used.
+     */
+    private void create_workers(int nworkers)
+    {
+        boolean tiebreak = Node.GetTieBreakingFlag();
+        for(int w = 0; w < nworkers; w++)
+            if(planners[w] == null)
+            {
+                planners[w] = factory.new_planner();
+                greedies[w] = factory.new_greedy(planners[w]);
+            }
+        if(Node.GetTieBreakingFlag() != tiebreak)
+            Node.ChangeTieBreakingFlag();
+    }
+
+    /**
+     * Solve a query with the searches of a worker.
+     * @param q query.
+     * @param worker index of the worker.
+     */
+    private void solve(Query q, int worker)
+    {
+        q.found = true;
+        q.cost = 0;
+        q.degrees = 0;
+        q.path = null;
+        if(q.goals != null)
+        {
+            solve_targets(q, worker);
+            return;
+        }
+        if(q.goal.equals(q.start))
+        {
+            if(q.withpath)
+                q.path = new ArrayList();
+            return;
+        }
+        SearchMethod search = q.withpath? planners[worker] : greedies[worker];
+        search.restart_search(q.start, q.goal);
+        if(!search.search())
+        {
+            q.found = false;
+            return;
+        }
+        if(q.withpath && postprocess)
+            ((Astar)search).search_ps();
+        ArrayList path = search.get_path();
+        if(path == null)
+        {
+            q.found = false;
+            return;
+        }
+        q.cost = path_cost(search);
+        if(q.withpath)
+        {
+            q.path = path;
+            q.degrees = (float)search.get_path_degrees();
+        }
+    }
+
+    /**
+     * Get the cost of the path found by a search, adding the costs of its moves.
+     * SearchMethod.get_path_cost only adds them after get_path_length has been called
+     * (as Main does) and otherwise returns the G value of the start, 0. The first versions
+     * of TaskPlannerConnect did not call it, so all their cost replies were 0.
+     * @param search search that has found a path (get_path already called).
+     * @return The cost of the path.
+     */
+    private static float path_cost(SearchMethod search)
+    {
+        search.get_path_length();
+        return (float)search.get_path_cost();
+    }
+
+    /**
+     * Solve a multi-target cost query with the Dijkstra search of a worker.
+     * @param q query.
+     * @param worker index of the worker.
+     */
+    private void solve_targets(Query q, int worker)
+    {
+        if(dijkstras[worker] == null)
+            dijkstras[worker] = new Dijkstra(map, q.start, q.start, Heuristics.H_OCTILE, false, false);
+        Dijkstra search = dijkstras[worker];
+        if(!search.set_start(q.start))
+        {
+            q.found = false;
+            q.costs = new float[q.goals.length];
+            Arrays.fill(q.costs, -1);
+            return;
+        }
+        q.costs = search.search(q.goals);
+        // Same scale than SearchMethod.get_path_cost
+        for(int i = 0; i < q.costs.length; i++)
+            if(q.costs[i] > 0)
+                q.costs[i] /= map.get_scale();
+    }
+
+    /**
+     * Stop the threads of the workers.
+     */
+    public void close()
+    {
+        if(executor != null)
+            executor.shutdown();
+        executor = null;
+    }
+
+}
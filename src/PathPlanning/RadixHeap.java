@@ -0,0 +1,159 @@
+package PathPlanning;
+
+/**
+ * Monotone priority queue (radix heap) of map cells for label-setting searches
+ * like Dijkstra, where the extracted costs never decrease.
+ * Elements are distributed in buckets depending on the highest bit that differs
+ * between its key and the last extracted key, so insertion is O(1) and extraction
+ * is amortized O(log C). The key of a cost can be quantized using a step: all
+ * costs in the same step share the key and are extracted in any order.
+ * There is no decrease-key operation: when the cost of a cell improves it is
+ * inserted again and the outdated entry must be ignored when extracted.
+ */
+public class RadixHeap {
+
+    /** Number of buckets (one per bit of a positive integer key plus bucket 0). */
+    private static final int NBUCKETS = 33;
+    /** Initial capacity of each bucket. */
+    private static final int INITIAL_CAPACITY = 64;
+    /** Cell index of the elements of each bucket. */
+    private int ids[][];
+    /** Cost of the elements of each bucket. */
+    private float costs[][];
+    /** Number of elements of each bucket. */
+    private int sizes[];
+    /** Total number of elements. */
+    private int count;
+    /** Key of the last extracted element. */
+    private int last;
+    /** Cost of the last extracted element. */
+    private float popped;
+    /** Quantization step for the costs, 0 to use the exact cost as key. */
+    private float step;
+
+    /**
+     * Create an empty radix heap.
+     * @param qstep quantization step for the costs (greater than 0), or 0 to use exact costs.
+     */
+    public RadixHeap(float qstep)
+    {
+        ids = new int[NBUCKETS][INITIAL_CAPACITY];
+        costs = new float[NBUCKETS][INITIAL_CAPACITY];
+        sizes = new int[NBUCKETS];
+        step = qstep > 0? qstep : 0;
+        clear();
+    }
+
+    /**
+     * Insert a cell. The cost must be greater or equal than the last extracted cost.
+     * @param id cell index.
+     * @param cost cost of the cell (greater or equal to 0).
+     */
+    public void push(int id, float cost)
+    {
+        insert(bucket(key(cost)), id, cost);
+        count++;
+    }
+
+    /**
+     * Extract a cell with minimum key.
+     * @return The index of the cell or -1 if the heap is empty.
+     */
+    public int pop()
+    {
+        if(count == 0)
+            return -1;
+        if(sizes[0] == 0)
+        {
+            // Get the first non empty bucket and redistribute it using its minimum key
+            int b = 1;
+            while(sizes[b] == 0)
+                b++;
+            int min = Integer.MAX_VALUE;
+            for(int i = 0; i < sizes[b]; i++)
+                min = Math.min(min, key(costs[b][i]));
+            last = min;
+            int n = sizes[b];
+            sizes[b] = 0;
+            for(int i = 0; i < n; i++)
+                insert(bucket(key(costs[b][i])), ids[b][i], costs[b][i]);
+        }
+        count--;
+        sizes[0]--;
+        popped = costs[0][sizes[0]];
+        return ids[0][sizes[0]];
+    }
+
+    /**
+     * @return The cost of the last extracted cell.
+     */
+    public float get_cost()
+    {
+        return popped;
+    }
+
+    /**
+     * @return true if there are no elements.
+     */
+    public boolean isEmpty()
+    {
+        return count == 0;
+    }
+
+    /**
+     * @return Number of elements (including outdated ones).
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * Remove all the elements. Allocated memory is kept for next searches.
+     */
+    public void clear()
+    {
+        for(int i = 0; i < NBUCKETS; i++)
+            sizes[i] = 0;
+        count = 0;
+        last = 0;
+        popped = 0;
+    }
+
+    /**
+     * Get the key of a cost. For non negative floats the bits representation
+     * keeps the order of the values.
+     */
+    private int key(float cost)
+    {
+        if(step > 0)
+            return (int)(cost / step);
+        return Float.floatToIntBits(cost);
+    }
+
+    /**
+     * Get the bucket of a key: highest bit different from the last extracted key.
+     */
+    private int bucket(int key)
+    {
+        if(key == last)
+            return 0;
+        return 32 - Integer.numberOfLeadingZeros(key ^ last);
+    }
+
+    /**
+     * Add an element to a bucket, growing it if needed.
+     */
+    private void insert(int b, int id, float cost)
+    {
+        if(sizes[b] == ids[b].length)
+        {
+            ids[b] = java.util.Arrays.copyOf(ids[b], sizes[b] * 2);
+            costs[b] = java.util.Arrays.copyOf(costs[b], sizes[b] * 2);
+        }
+        ids[b][sizes[b]] = id;
+        costs[b][sizes[b]] = cost;
+        sizes[b]++;
+    }
+
+}
@@ -1,6 +1,5 @@
 package PathPlanning;
 
-import java.util.*;
 
 
 /**
@@ -12,9 +11,7 @@ import java.util.*;
 public class STheta extends SearchMethod {
     
     /** Open nodes list, sorted by F. */
-    private List<Node> open;
-    /** Closed nodes table. */
-    private Hashtable closed;
+    private OpenList open;
     
     
     /**
@@ -29,8 +26,7 @@ public class STheta extends SearchMethod {
     public STheta(Map dem, Node init, Node end, short heur, boolean withz, boolean withc)
     {
         super("S-Theta*", dem, init, end, heur, withz, withc, true);
-	open = new ArrayList();
-	closed = new Hashtable();
+	open = new OpenList(dem, state);
         // Change tie breaking flag
         Node.ChangeTieBreakingFlag();
     }
@@ -42,7 +38,7 @@ public class STheta extends SearchMethod {
     protected void clear_internal_data()
     {
 	open.clear();
-	closed.clear();
+	state.clear_closed();
     }
     
     /**
@@ -54,23 +50,22 @@ public class STheta extends SearchMethod {
     {
         if(!check_valid_data())
             return false;
-        ArrayList<Node> succlist = new ArrayList();
         
         // Set initial state
-        start.setParent(start);
-        map.get_node(start.getX(), start.getY()).setParent(start);
-        map.get_node(start.getX(), start.getY()).setF(0, get_h(start, start, goal));
-        open.add(map.get_node(start.getX(), start.getY()));
+        int sid = index(start);
+        state.set_parent(sid, sid);
+        state.set_f(sid, 0, get_h(start, start, goal));
+        open.add(sid);
         Node pos;
         // Auxiliary variables
-        Node aux;
+        int nsucc;
         
         // Begin search
         start_cpu_counter();
         while(!open.isEmpty())
         {            
-            pos = open.remove(0);
-            closed.put(pos.hashCode(), pos);
+            pos = map.get_node(open.poll());
+            state.close(index(pos));
             expnodes++;
 
             // If position is solution => finish
@@ -82,15 +77,12 @@ public class STheta extends SearchMethod {
             }
             
             // Generate succesors for actual point
-            succlist = map.get_succesors_without_obstacles(pos);
-            for(int i=0; i < succlist.size(); i++)
+            nsucc = map.get_succesors(index(pos), succlist);
+            for(int i=0; i < nsucc; i++)
             {
-                aux = succlist.get(i);
-                if(closed.get(aux.hashCode()) == null)
-                    updateVertex(pos, aux);
+                if(!state.is_closed(succlist[i]))
+                    updateVertex(pos, map.get_node(succlist[i]));
             }// End of succesor check
-            // Sort open list
-            Collections.sort(open);
 
         } // Open list is empty, no path found
         end_cpu_counter();
@@ -108,42 +100,36 @@ public class STheta extends SearchMethod {
         float hsuc, gsuct, gsuca = Float.POSITIVE_INFINITY;
         int x = succ.getX();
         int y = succ.getY();
+        int id = index(succ);
+        Node parent = get_parent(pos);
 
         hsuc = get_h(pos, succ, goal);
-        gsuct = get_g(pos.getParent(), succ, true);
+        gsuct = get_g(parent, succ);
         if(gsuct > 0)
         {
-            if(succ.A == -1)
-                succ.A = Geometry.LongHyp(goal.getX() - x, goal.getY() - y);
-            if(pos.getParent().A == -1)
-                pos.getParent().A = Geometry.LongHyp(goal.getX() - pos.getParent().getX(), goal.getY() - pos.getParent().getY());
-            float ang = Geometry.Angle(Geometry.LongHyp(x - pos.getParent().getX(), y - pos.getParent().getY()), succ.A, pos.getParent().A);
+            float ang = Geometry.Angle(Geometry.LongHyp(x - parent.getX(), y - parent.getY()), get_a(succ), get_a(parent));
             gsuct += ang;
             // Path 2
-            if(gsuct < succ.getG())
+            if(gsuct < state.get_g(id))
             {
-                map.get_node(x, y).setF(gsuct, hsuc);
-                map.get_node(x, y).setParent(pos.getParent());
-                // Remove succesor from open if is contained and insert succesors in open list
-                open.remove(map.get_node(x, y));
-                open.add(map.get_node(x, y));
+                state.set_f(id, gsuct, hsuc);
+                state.set_parent(id, index(parent));
+                // Insert succesor in open list or update its position if is contained
+                open.update(id);
             }
         }
         else
         {
-            if(succ.A == -1)
-                succ.A = Geometry.LongHyp(goal.getX() - x, goal.getY() - y);
             float aux = Geometry.LongHyp(goal.getX() - pos.getX(), goal.getY() - pos.getY());
-            float ang = Geometry.Angle(Geometry.LongHyp(x - pos.getX(), y - pos.getY()), succ.A, aux);
-            gsuca = get_g(pos, succ, true) + ang;
+            float ang = Geometry.Angle(Geometry.LongHyp(x - pos.getX(), y - pos.getY()), get_a(succ), aux);
+            gsuca = get_g(pos, succ) + ang;
             // Path 1 (A*)
-            if(gsuca < succ.getG())
+            if(gsuca < state.get_g(id))
             {
-                map.get_node(x, y).setF(gsuca, hsuc);
-                map.get_node(x, y).setParent(pos);
-                // Remove succesor from open if is contained and insert succesors in open list
-                open.remove(map.get_node(x, y));
-                open.add(map.get_node(x, y));
+                state.set_f(id, gsuca, hsuc);
+                state.set_parent(id, index(pos));
+                // Insert succesor in open list or update its position if is contained
+                open.update(id);
             }
         }
     }
@@ -156,7 +142,7 @@ public class STheta extends SearchMethod {
     {
         System.out.println("Open:");
         for(int i=0; i < open.size(); i++)
-            System.out.println("    " + open.get(i).toString() + "  P:"+open.get(i).getParent());
+            System.out.println("    " + node_info(open.get(i)) + "  P:"+node_info(state.get_parent(open.get(i))));
         System.out.println();
     }
 
@@ -165,11 +151,10 @@ public class STheta extends SearchMethod {
      */
     private void print_closed()
     {
-        Enumeration<Node> li;
-        li = closed.elements();
         System.out.println("Closed:");
-        for(int i=0; i < closed.size(); i++)
-            System.out.println("      "+li.nextElement().toString());
+        for(int i=0; i < map.get_cols()*map.get_rows(); i++)
+            if(state.is_closed(i))
+                System.out.println("      "+node_info(i));
         System.out.println();
     }
 
@@ -10,6 +10,10 @@ public abstract class SearchMethod extends Thread {
 
     /** DEM and traversal costs grid. */
     protected Map map;
+    /** Search information (G, H, parent...) of the cells of the map. */
+    protected SearchState state;
+    /** Buffer to store the index of the successors of the expanded node. */
+    protected int succlist[] = new int[Map.NSUCCESSORS];
     /** Heuristics used. */
     protected short heuristic;
     /** Specify if elevation values are used during search. */
@@ -77,11 +81,13 @@ public abstract class SearchMethod extends Thread {
         heuristic = h;
         withz = z;
         withc = c;
+        state = new SearchState(map);
 	restart_search(init, end);
     }
     
     /** 
-     * Initialize the search process with new start and goal nodes.
+     * Initialize the search process with new start and goal nodes. The search state
+     * is restarted in constant time and the nodes of the map are not modified.
      * @note DEM information does not change.
      */
     public final void restart_search(Node init, Node end)
@@ -98,13 +104,13 @@ public abstract class SearchMethod extends Thread {
 	goal = null;
         if(instantiated)
 	{
-	    map.restart_map(true);
+	    state.reset();
 	    clear_internal_data();
 	}
 	else
 	    instantiated = true;      
         if(set_start(init))
-            start.setF(0,0);       
+            state.set_f(index(start), 0, 0);
         set_goal(end);
 	if(start != null && goal != null)
 	    dsg = Heuristics.Heuclidean(start, goal);
@@ -163,7 +169,7 @@ public abstract class SearchMethod extends Thread {
     {
         if(init != null && map.valid_pos(init.getX(), init.getY()) && 
                 (map.get_tcost(init) <= Map.MAX_COST || map.get_isCornernode())&& 
-                !init.isObstacle() && map.get_succesors_without_obstacles(init).size() > 0)
+                !init.isObstacle() && map.has_succesors(init))
         {
             start = map.get_node(init.getX(), init.getY());
             return true;
@@ -181,7 +187,7 @@ public abstract class SearchMethod extends Thread {
     {
         if(end != null && map.valid_pos(end.getX(), end.getY()) && 
                 (map.get_tcost(end) <= Map.MAX_COST || map.get_isCornernode()) && 
-                !end.isObstacle() && map.get_succesors_without_obstacles(end).size() > 0)
+                !end.isObstacle() && map.has_succesors(end))
         {
             goal = map.get_node(end.getX(), end.getY());
             return true;
@@ -190,6 +196,40 @@ public abstract class SearchMethod extends Thread {
 	    return false;
     }
 
+    /**
+     * Get the index of a node in the search state.
+     * @param n node of the map.
+     * @return The linear index of the node position (see Map.get_index).
+     */
+    protected final int index(Node n)
+    {
+        return map.get_index(n.getX(), n.getY());
+    }
+
+    /**
+     * Get the parent of a node in the current search.
+     * @param n node of the map.
+     * @return The parent node or null if it has not parent.
+     */
+    protected final Node get_parent(Node n)
+    {
+        return map.get_node(state.get_parent(index(n)));
+    }
+
+    /**
+     * Get the terrain property (distance to goal) of a node used by alpha heuristics,
+     * calculating it the first time.
+     * @param n node of the map.
+     * @return The euclidean distance from n to goal.
+     */
+    protected final float get_a(Node n)
+    {
+        int id = index(n);
+        if(state.get_a(id) == -1)
+            state.set_a(id, Geometry.LongHyp(goal.getX() - n.getX(), goal.getY() - n.getY()));
+        return state.get_a(id);
+    }
+
     /**
      * Change de delta factor.
      * @param delta new delta value (positive values only).
@@ -217,12 +257,9 @@ public abstract class SearchMethod extends Thread {
                h = (dist + (ang * map.get_cols()/100) * CFACTOR);
                break;
             case Heuristics.H_ALPHA2:
-               if(succ.A == -1)
-                   succ.A = Geometry.LongHyp(dest.getX() - succ.getX(), dest.getY() - succ.getY());
-               if(pos.getParent().A == -1)
-                   pos.getParent().A = Geometry.LongHyp(dest.getX() - pos.getParent().getX(), dest.getY() - pos.getParent().getY());
-               ang = Geometry.Angle(Geometry.LongHyp(succ.getX() - pos.getParent().getX(), succ.getY() - pos.getParent().getY()), succ.A, pos.getParent().A);
-               h = (withz?Heuristics.HeuclideanZ(succ, dest):succ.A) + (ang * CFACTOR);
+               Node parent = get_parent(pos);
+               ang = Geometry.Angle(Geometry.LongHyp(succ.getX() - parent.getX(), succ.getY() - parent.getY()), get_a(succ), get_a(parent));
+               h = (withz?Heuristics.HeuclideanZ(succ, dest):get_a(succ)) + (ang * CFACTOR);
                break;
             default:
                h = Heuristics.CalculateH(heuristic, succ, dest);
@@ -232,6 +269,13 @@ public abstract class SearchMethod extends Thread {
     }
 
 
+    /**
+     * Calculates the cost to reach dest from pos.
+     * @param pos start node.
+     * @param dest destination node.
+     * @param accumulate true to add the G value of the pos node.
+     * @return The cost or -1 if there is not line of sight between the nodes.
+     */
     public float get_g(Node pos, Node dest, boolean accumulate)
     {
         if(pos == null || dest == null)
@@ -243,6 +287,18 @@ public abstract class SearchMethod extends Thread {
         return (Geometry.LineOfSightB(map, pos, dest)?(Geometry.LongHyp(pos.getX()-dest.getX(), pos.getY()-dest.getY())+costp):-1);
     }
     
+    /**
+     * Calculates the cost to reach dest from pos during search, using the G value
+     * of pos stored in the search state.
+     * @param pos actual node.
+     * @param dest destination node.
+     * @return The accumulated cost or -1 if there is not line of sight between the nodes.
+     */
+    protected float get_g(Node pos, Node dest)
+    {
+        return (Geometry.LineOfSightB(map, pos, dest)?(Geometry.LongHyp(pos.getX()-dest.getX(), pos.getY()-dest.getY())+state.get_g(index(pos))):-1);
+    }
+    
     /**
      * Allows to overwrite the path with a new path (for post-smoothing phase for example).
      * After set the new path it calculates the cost of the path.
@@ -274,21 +330,57 @@ public abstract class SearchMethod extends Thread {
     {
         if(path != null) // Path manually changed
             return path;
-        if(start == null)
+        if(start == null || goal == null)
             return null;
-        Node aux = map.get_node(goal.getX(), goal.getY()); 
+        // Build the path nodes from goal to start using the search state
+        int sid = index(start);
+        int id = index(goal);
+        Node aux = path_node(id);
+        Node par;
         path = new ArrayList();
         path.add(aux);
-        while(aux.getParent() != null && !aux.equals(start))
+        while(state.get_parent(id) != SearchState.NO_PARENT && id != sid)
         {
-            aux = aux.getParent();
-            path.add(0,aux);
+            id = state.get_parent(id);
+            par = path_node(id);
+            aux.setParent(par);
+            path.add(par);
+            aux = par;
         }
         // Check last added node
-        if(aux.equals(start) && path.size() > 1)
+        if(id == sid && path.size() > 1)
+        {
+            java.util.Collections.reverse(path);
             return path;
-        else
-            return null;
+        }
+        path = null;
+        return null;
+    }
+    
+    /**
+     * Create a new node for a path with the information of a cell in the search state.
+     * @param id cell index.
+     * @return A copy of the map node with its G and H values.
+     */
+    private Node path_node(int id)
+    {
+        Node n = map.get_node(id);
+        Node temp = new Node(n.getX(), n.getY(), n.getZ());
+        temp.setF(state.get_g(id), state.get_h(id));
+        temp.A = state.get_a(id);
+        return temp;
+    }
+    
+    /**
+     * Formating the data of a cell as (X Y Z)[G+H] F using the search state.
+     * @param id cell index.
+     * @return A string with the relevant data of the cell.
+     */
+    protected String node_info(int id)
+    {
+        Node n = new Node(map.get_node(id));
+        n.setF(state.get_g(id), state.get_h(id));
+        return n.toString();
     }
     
     /**
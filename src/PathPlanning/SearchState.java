@@ -0,0 +1,232 @@
+package PathPlanning;
+
+import java.util.Arrays;
+
+/**
+ * Search information (cost, heuristics, parent...) of the cells of a map stored
+ * as arrays indexed by the linear index of the cells (see Map.get_index).
+ * Each search algorithm owns its state, so the nodes of the map only contain
+ * the terrain information and are not modified during search.
+ * Each cell is stamped with the search generation in which it was modified.
+ * A cell with an older stamp has the initial values, so restart the state for a
+ * new search only requires to increment the generation. The closed set is stored
+ * in the same way, using its own generation to allow clear it during a search.
+ */
+public class SearchState {
+
+    /** Value used for cells without parent. */
+    public static final int NO_PARENT = -1;
+    /** Value of cost to reach each cell. */
+    private float g[];
+    /** Value of heuristics evaluation of each cell. */
+    private float h[];
+    /** Value of evaluation function of each cell. */
+    private float f[];
+    /** Index of the parent of each cell. */
+    private int parent[];
+    /** Terrain property of each cell (cached distance to goal for alpha heuristics). */
+    private float a[];
+    /** Generation in which each cell was modified. */
+    private int stamp[];
+    /** Current search generation. */
+    private int generation;
+    /** Closed generation in which each cell was closed. */
+    private int closed[];
+    /** Current closed generation. */
+    private int closedgen;
+
+    /**
+     * Create the search state for all the cells of a map.
+     * @param map map to be searched.
+     */
+    public SearchState(Map map)
+    {
+        int n = map.get_cols() * map.get_rows();
+        g = new float[n];
+        h = new float[n];
+        f = new float[n];
+        parent = new int[n];
+        a = new float[n];
+        stamp = new int[n];
+        generation = 1;
+        closed = new int[n];
+        closedgen = 1;
+    }
+
+    /**
+     * Set all cells to the initial values (infinite cost, no parent) by starting
+     * a new generation. Only when the generation counter overflows the stamps are cleared.
+     */
+    public void reset()
+    {
+        generation++;
+        if(generation == Integer.MAX_VALUE)
+        {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        clear_closed();
+    }
+
+    /**
+     * Remove all the cells from the closed set.
+     */
+    public void clear_closed()
+    {
+        closedgen++;
+        if(closedgen == Integer.MAX_VALUE)
+        {
+            Arrays.fill(closed, 0);
+            closedgen = 1;
+        }
+    }
+
+    /**
+     * Insert a cell in the closed set.
+     * @param id cell index.
+     */
+    public void close(int id)
+    {
+        closed[id] = closedgen;
+    }
+
+    /**
+     * Remove a cell from the closed set.
+     * @param id cell index.
+     */
+    public void reopen(int id)
+    {
+        closed[id] = 0;
+    }
+
+    /**
+     * Test if a cell is in the closed set.
+     * @param id cell index.
+     * @return true if the cell is closed.
+     */
+    public boolean is_closed(int id)
+    {
+        return closed[id] == closedgen;
+    }
+
+    /**
+     * Test if a cell has been modified in the current generation.
+     * @param id cell index.
+     * @return true if the cell has been reached in the current search.
+     */
+    public boolean is_touched(int id)
+    {
+        return stamp[id] == generation;
+    }
+
+    /**
+     * Set the initial values to a cell if it has not been modified in the current generation.
+     * @param id cell index.
+     */
+    private void touch(int id)
+    {
+        if(stamp[id] != generation)
+        {
+            stamp[id] = generation;
+            g[id] = Float.MAX_VALUE;
+            h[id] = 0;
+            f[id] = Float.MAX_VALUE;
+            parent[id] = NO_PARENT;
+            a[id] = -1;
+        }
+    }
+
+    /**
+     * Set value of G and H, and F = G + H. If any value is less than 0, the value is set to 1
+     * (as Node.setF does).
+     * @param id cell index.
+     * @param gval G value (greater or equal to 0).
+     * @param hval H value (greater or equal to 0).
+     */
+    public void set_f(int id, float gval, float hval)
+    {
+        touch(id);
+        g[id] = gval < 0? 1 : gval;
+        h[id] = hval < 0? 1 : hval;
+        f[id] = g[id] + h[id];
+    }
+
+    /**
+     * Set a new parent for a cell.
+     * @param id cell index.
+     * @param p index of the parent or NO_PARENT.
+     */
+    public void set_parent(int id, int p)
+    {
+        touch(id);
+        parent[id] = p;
+    }
+
+    /**
+     * Set the terrain property of a cell.
+     * @param id cell index.
+     * @param value new value.
+     */
+    public void set_a(int id, float value)
+    {
+        touch(id);
+        a[id] = value;
+    }
+
+    /**
+     * @param id cell index.
+     * @return The G (cost) value of the cell.
+     */
+    public float get_g(int id)
+    {
+        return stamp[id] == generation? g[id] : Float.MAX_VALUE;
+    }
+
+    /**
+     * @param id cell index.
+     * @return The H (heuristics) value of the cell.
+     */
+    public float get_h(int id)
+    {
+        return stamp[id] == generation? h[id] : 0;
+    }
+
+    /**
+     * @param id cell index.
+     * @return The F (G+H) value of the cell.
+     */
+    public float get_f(int id)
+    {
+        return stamp[id] == generation? f[id] : Float.MAX_VALUE;
+    }
+
+    /**
+     * @param id cell index.
+     * @return The index of the parent of the cell or NO_PARENT.
+     */
+    public int get_parent(int id)
+    {
+        return stamp[id] == generation? parent[id] : NO_PARENT;
+    }
+
+    /**
+     * @param id cell index.
+     * @return The terrain property of the cell, -1 if not set.
+     */
+    public float get_a(int id)
+    {
+        return stamp[id] == generation? a[id] : -1;
+    }
+
+    /**
+     * Comparison between cells using the same criteria than Node.compareTo.
+     * @param i first cell index.
+     * @param j second cell index.
+     * @return less than 0 if cell i goes before cell j, 0 if equals and greater than 0 otherwise.
+     */
+    public int compare(int i, int j)
+    {
+        return Node.compare(get_f(i), get_h(i), get_f(j), get_h(j));
+    }
+
+}
@@ -0,0 +1,207 @@
+package PathPlanning;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Communication with the task planner through a shared memory file, as an
+ * alternative to the named pipes (see memoria.c in FF). The file is created by FF
+ * before starting the path planner and it contains two ring buffers: the requests
+ * written by FF and the replies written by the path planner. Each ring has a counter
+ * of written bytes and a counter of read bytes (32 bits, native order, in different
+ * cache lines of the header), so each counter is only written by one process.
+ * The waits are active at first, so the messages are received without system calls.
+ */
+public class SharedMemoryChannel {
+
+    /** Size of the header. */
+    public static final int HEADER = 512;
+    /** Size of each ring buffer. */
+    public static final int RING = 65536;
+    /** Positions of the header: pid of FF and counters of the rings. */
+    private static final int PID = 0;
+    private static final int REQUESTS_WRITTEN = 64;
+    private static final int REQUESTS_READ = 128;
+    private static final int REPLIES_WRITTEN = 192;
+    private static final int REPLIES_READ = 256;
+    /** Active waits (with several processors) before yielding the processor and before sleeping. */
+    private static final int ACTIVE_WAITS = 2000;
+    private static final int YIELD_WAITS = 200;
+    /** Sleeping waits between checks of the task planner process. */
+    private static final int CHECK_WAITS = 1000;
+
+    /** Mapped file. */
+    private MappedByteBuffer shm;
+    /** Open file. */
+    private RandomAccessFile file;
+    /** Active waits, none with a single processor (they delay the other process). */
+    private int activewaits = ACTIVE_WAITS;
+    /** Process of the task planner (/proc entry). */
+    private File owner;
+    /**
+     * Accessed between the data and the counters: the volatile accesses order the
+     * accesses to the mapped memory (the counters are published after the data).
+     */
+    private volatile int fence;
+
+    /**
+     * Constructor for SharedMemoryChannel class.
+     * @param name name of the file created by FF.
+     * @throws IOException if the file cannot be mapped or it has not the expected size.
+     */
+    public SharedMemoryChannel(String name) throws IOException
+    {
+        file = new RandomAccessFile(name, "rw");
+        if(file.length() != HEADER + 2 * RING)
+        {
+            file.close();
+            throw new IOException("Invalid shared memory file: "+name);
+        }
+        shm = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER + 2 * RING);
+        shm.order(ByteOrder.nativeOrder());
+        owner = new File("/proc/" + shm.getInt(PID));
+        if(Runtime.getRuntime().availableProcessors() <= 1)
+            activewaits = 0;
+    }
+
+    /**
+     * @return A stream to read the requests of the task planner.
+     */
+    public InputStream get_input()
+    {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException
+            {
+                byte b[] = new byte[1];
+                receive(b, 0, 1);
+                return b[0] & 0xFF;
+            }
+            @Override
+            public int read(byte b[], int off, int len) throws IOException
+            {
+                return receive(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * @return A stream to write the replies to the task planner, each write is
+     * visible as soon as it is done.
+     */
+    public OutputStream get_output()
+    {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException
+            {
+                send(new byte[]{(byte)b}, 0, 1);
+            }
+            @Override
+            public void write(byte b[], int off, int len) throws IOException
+            {
+                send(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * Read the available requests, waiting until there is at least one byte.
+     * @param b destination buffer.
+     * @param off first position of the buffer.
+     * @param len maximum number of bytes.
+     * @return The number of bytes read.
+     * @throws IOException if the task planner has finished.
+     */
+    private int receive(byte b[], int off, int len) throws IOException
+    {
+        if(len == 0)
+            return 0;
+        int available, waits = 0;
+        while((available = shm.getInt(REQUESTS_WRITTEN) - shm.getInt(REQUESTS_READ)) == 0)
+            waits = await(waits);
+        int f = fence; // Read the counter before the data
+        int read = shm.getInt(REQUESTS_READ);
+        int pos = read & (RING - 1);
+        int n = Math.min(Math.min(len, available), RING - pos);
+        for(int i = 0; i < n; i++)
+            b[off+i] = shm.get(HEADER + pos + i);
+        fence = f; // Read the data before releasing the space
+        shm.putInt(REQUESTS_READ, read + n);
+        return n;
+    }
+
+    /**
+     * Write replies, waiting while the ring is full.
+     * @param b source buffer.
+     * @param off first position of the buffer.
+     * @param len number of bytes.
+     * @throws IOException if the task planner has finished.
+     */
+    private void send(byte b[], int off, int len) throws IOException
+    {
+        int written, free, pos, n, waits = 0;
+        while(len > 0)
+        {
+            written = shm.getInt(REPLIES_WRITTEN);
+            free = RING - (written - shm.getInt(REPLIES_READ));
+            if(free == 0)
+            {
+                waits = await(waits);
+                continue;
+            }
+            waits = 0;
+            pos = written & (RING - 1);
+            n = Math.min(Math.min(len, free), RING - pos);
+            for(int i = 0; i < n; i++)
+                shm.put(HEADER + RING + pos + i, b[off+i]);
+            fence = n; // Write the data before the counter
+            shm.putInt(REPLIES_WRITTEN, written + n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Wait until a counter written by the task planner changes: actively at first,
+     * then yielding the processor and finally sleeping.
+     * @param waits number of previous waits.
+     * @return The number of waits.
+     * @throws IOException if the task planner has finished.
+     */
+    private int await(int waits) throws IOException
+    {
+        int f = fence; // Read the counters again
+        waits++;
+        if(waits < activewaits)
+            return waits;
+        if(waits < activewaits + YIELD_WAITS)
+        {
+            Thread.yield();
+            return waits;
+        }
+        LockSupport.parkNanos(50000);
+        if(Thread.interrupted())
+            throw new IOException("Interrupted waiting the task planner");
+        if((waits - activewaits - YIELD_WAITS) % CHECK_WAITS == 0 && !owner.exists())
+            throw new IOException("The task planner has finished");
+        return waits;
+    }
+
+    /**
+     * Close the file.
+     * @throws IOException if the file cannot be closed.
+     */
+    public void close() throws IOException
+    {
+        file.close();
+    }
+
+}
@@ -1,7 +1,10 @@
 package PathPlanning;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 
 /**
  * Connection with a task planner using a modified FF PDDL planner.
@@ -14,10 +17,32 @@ public class TaskPlannerConnect {
     private boolean postprocess = false;
     /** Heuristic employed. */
     private short heur;
+    /** Weight of the heuristic (A* and Theta* algorithms). */
+    private float weight = 1;
     /** Digital Elevation Map. */
     private Map dem;
+    /** Workers to solve the queries. */
+    private QueryPool pool;
+    /** Selected algorithm. */
+    private char alg;
+    /** True for use transversal costs. */
+    private boolean withc;
+    /** Costs between the cells of the PDDL problem, null if they are not computed. */
+    private CostMatrix costs;
+    /** Results of the previous queries, null if the map is too big for the keys. */
+    private PathCache cache;
+    /** Maximum number of queries stored in the cache. */
+    private static final int CACHE_SIZE = 4096;
+    /** Flags of the keys of the cache: algorithm and traversal costs. */
+    private int cacheflags;
     /** Last path found. */
     ArrayList path;
+    /** Accumulated cost of the paths. */
+    private float pathcost;
+    /** Accumulated degrees of the paths. */
+    private float pathdeg;
+    /** Direction at the end of the last path. */
+    private float dirant;
     /** Complete path. */
     ArrayList fullpath;
     /** Required for initialization. */
@@ -30,11 +55,34 @@ public class TaskPlannerConnect {
     private FileReader pipeRead;
     /** Write stream to FF. */
     private FileWriter pipeWrite;
+    /** Read stream from FF (binary protocol). */
+    private DataInputStream pipeIn;
+    /** Write stream to FF (binary protocol). */
+    private OutputStream pipeOut;
+    /** True to use the binary protocol, false for the text protocol. */
+    private boolean binary;
+    /** Environment variable to select the protocol, "text" for the text protocol (shared with FF). */
+    public static final String PROTOCOL = "UP2TA_PROTOCOL";
+    /** Environment variable to select the transport, "shm" for shared memory instead of pipes (shared with FF). */
+    public static final String TRANSPORT = "UP2TA_TRANSPORT";
+    /** Shared memory file created by FF. */
+    private final String SharedWithFF = "/tmp/memoria-ff-astar";
+    /** Shared memory with FF, null if the pipes are used. */
+    private SharedMemoryChannel channel;
     /** Commands send by FF: */
     private static final short HEUR = '0';
     private static final short PATH = '1';
     private static final short EXIT = '2';
     private static final short COST = '3';
+    private static final short HELLO = 'V';
+    private static final short BATCH = 'B';
+    /** Binary protocol: version, size of the frames and status of the replies. */
+    private static final int VERSION = 1;
+    private static final int FRAME = 24;
+    private static final int OK = 0;
+    private static final int NOPATH = 1;
+    /** Maximum number of requests of a batch. */
+    private static final int MAX_BATCH = 1024;
     /** Format of the points: */
     private static final char CAS = 'C';
     private static final char DEL = '_';
@@ -49,23 +97,60 @@ public class TaskPlannerConnect {
     }
     
     /** 
-     * Read parameters and open files. 
+     * Read parameters and open files. If the PDDL problem file is given (fifth parameter)
+     * the costs between all its cells are computed before opening the pipes, using the
+     * workers of the cost queries and only if they are optimal (see exact_costs).
+     * The algorithm (first parameter) is a dot, the algorithm letter, an optional 'c' to
+     * use the traversal costs and either a digit with the safety margin (.a2) or a decimal
+     * number with the weight of the heuristic (.a1.5, only for A* and Theta* algorithms),
+     * so integer weights need the decimal point (.a2.0).
      * @return True if data is valid, false if unknown algorithm or cannot open a file.
      */
     public boolean initialize(String args[])
+    {
+        return initialize(args, null, System.getenv());
+    }
+    
+    /** 
+     * Read parameters and open files, getting the map from the maps loaded by
+     * previous sessions (daemon mode).
+     * @param args parameters (see initialize(String[])).
+     * @param maps loaded maps, null to load the map.
+     * @param env environment variables of the task planner (protocol and transport).
+     * @return True if data is valid, false if unknown algorithm or cannot open a file.
+     */
+    public boolean initialize(String args[], MapStore maps, java.util.Map env)
     {
         FileManager.disableLoadIndicator = true;
-	// Load dem
-	dem = new Map(args[1], args[2]);
-	if(!dem.valid_dem() && !dem.valid_cost_map())
-	    return false;
-	char alg = args[0].charAt(1);
-	boolean withc = false;
+	alg = args[0].charAt(1);
+	withc = false;
 	if(args[0].length() > 2 && args[0].charAt(2) == 'c')
 	    withc = true;
         int sp = (withc?1:0);
-        if(args[0].length() > (2+sp) && Character.isDigit(args[0].charAt(2+sp)))
-            dem.expand_costmap((short)Integer.parseInt(String.valueOf(args[0].charAt(2+sp))));
+        // A decimal number is the weight of the heuristic (e.g. .a1.5 or .a2.0), a digit the safety margin (.a2)
+        short margin = 0;
+        if(args[0].length() > (2+sp) && args[0].indexOf('.', 2+sp) > 0)
+        {
+            try{
+                weight = Float.parseFloat(args[0].substring(2+sp));
+            }catch(NumberFormatException nfe){
+                System.out.println("Invalid heuristic weight: "+args[0].substring(2+sp));
+                return false;
+            }
+        }
+        else if(args[0].length() > (2+sp) && Character.isDigit(args[0].charAt(2+sp)))
+            margin = (short)Integer.parseInt(String.valueOf(args[0].charAt(2+sp)));
+	// Load dem
+	if(maps != null)
+	    dem = maps.get(args[1], args[2], margin);
+	else
+	{
+	    dem = new Map(args[1], args[2]);
+	    if(margin > 0)
+		dem.expand_costmap(margin);
+	}
+	if(dem == null || (!dem.valid_dem() && !dem.valid_cost_map()))
+	    return false;
         for(int i=0; i<dem.get_cols(); i++)
         {
             for(int j=0; j<dem.get_rows(); j++)
@@ -78,68 +163,200 @@ public class TaskPlannerConnect {
                 break;
         }
 	// Set the heuristic and create the path-planning algorithm
+	pathplanner = new_planner();
+	if(pathplanner == null)
+	    return false;
+	if(weight != 1 && !(pathplanner instanceof Astar) && !(pathplanner instanceof Thetastar))
+	{
+	    System.out.println("The heuristic weight is only valid for A* and Theta* algorithms: "+args[0]);
+	    return false;
+	}
+	pool = new QueryPool(dem, pathplanner, new_greedy(pathplanner), postprocess, new QueryPool.Factory() {
+	    @Override
+	    public SearchMethod new_planner()
+	    {
+		return TaskPlannerConnect.this.new_planner();
+	    }
+	    @Override
+	    public SearchMethod new_greedy(SearchMethod planner)
+	    {
+		return TaskPlannerConnect.this.new_greedy(planner);
+	    }
+	}, 0);
+	if(PathCache.valid_map(dem))
+	{
+	    cache = new PathCache(dem, CACHE_SIZE);
+	    cacheflags = (alg & 0x7F) | (withc? 0x80 : 0);
+	}
+	// Cost matrix of the problem cells, only if it gives the same costs than the cost queries
+	if(args.length > 4 && !exact_costs())
+	    System.out.println("#cost-matrix: not used, the cost queries of the algorithm are not optimal");
+	else if(args.length > 4)
+	{
+	    int cells[][] = FileManager.ReadPDDLcells(args[4]);
+	    if(cells == null)
+		System.out.println("#cost-matrix: not used, cannot read the cells of "+args[4]);
+	    else
+	    {
+		Node nodes[] = new Node[cells.length];
+		for(int i = 0; i < cells.length; i++)
+		    nodes[i] = new Node(cells[i][0], dem.get_rows()-cells[i][1], 0);
+		long timestart = System.currentTimeMillis();
+		costs = new CostMatrix(dem, nodes);
+		costs.compute(pool);
+		System.out.println("#cost-matrix: "+costs.size()+" cells in "+(System.currentTimeMillis()-timestart)+" ms");
+	    }
+	}
+	// Open pipes
+        try{
+	    String abspath = new File("").getAbsolutePath();
+	    binary = !"text".equals(env.get(PROTOCOL));
+	    if("shm".equals(env.get(TRANSPORT)))
+	    {
+		if(!binary)
+		{
+		    System.out.println("The text protocol cannot be used with shared memory.");
+		    return false;
+		}
+		channel = new SharedMemoryChannel(SharedWithFF);
+		pipeOut = channel.get_output();
+		pipeIn = new DataInputStream(channel.get_input());
+	    }
+	    else if(binary)
+	    {
+		pipeOut = new FileOutputStream(WriteToFF);
+		pipeIn = new DataInputStream(new FileInputStream(ReadFromFF));
+	    }
+	    else
+	    {
+		pipeWrite= new FileWriter(WriteToFF);
+		pipeRead = new FileReader(ReadFromFF);
+	    }
+        }catch(FileNotFoundException nf){
+            System.out.println("Cannot open file: " + nf.toString());
+	    return false;
+        }catch(IOException ioe){
+            System.out.println("Input/output error: " + ioe.toString());
+	    return false;
+        }
+	// Define formating for H and G values
+	java.text.DecimalFormatSymbols sim = new java.text.DecimalFormatSymbols();
+	sim.setGroupingSeparator(',');
+	sim.setDecimalSeparator('.');
+        formatf = new java.text.DecimalFormat("######.######",sim);
+	formatf.setGroupingSize(9);
+	formatf.setMinimumIntegerDigits(6);
+	return true; // OK
+    }
+    
+    /**
+     * Create a new search of the selected path-planning algorithm, and set the heuristic.
+     * @return The search or null if the algorithm is unknown.
+     */
+    private SearchMethod new_planner()
+    {
+	SearchMethod planner;
 	switch(alg)
 	{
 	    case 'a': // A*
 		heur = Heuristics.H_OCTILE;
-	        pathplanner = new Astar(dem, initnode, initnode, heur, false, withc);
+	        planner = new Astar(dem, initnode, initnode, heur, false, withc);
 		break;
             case 'p': // A*PS
 		heur = Heuristics.H_EUCLIDEAN;
-	        pathplanner = new Astar(dem, initnode, initnode, heur, false, withc);
-                pathplanner.change_mode(true);
+	        planner = new Astar(dem, initnode, initnode, heur, false, withc);
+                planner.change_mode(true);
                 postprocess = true;
 		break;
 	    case 'd': // Dijkstra
 		heur = Heuristics.H_OCTILE;
-		pathplanner = new Dijkstra(dem, initnode, initnode, heur, false, withc);
+		planner = new Dijkstra(dem, initnode, initnode, heur, false, withc);
 		break;
 	    case 't': // Basic Theta*
 		heur = Heuristics.H_EUCLIDEAN;
-		pathplanner = new Thetastar(dem, initnode, initnode, heur, false, withc);
+		planner = new Thetastar(dem, initnode, initnode, heur, false, withc);
+		break;
+	    case 'l': // Lazy Theta*
+		heur = Heuristics.H_EUCLIDEAN;
+		planner = new LazyThetastar(dem, initnode, initnode, heur, false, withc);
 		break;
 	    case 'v': // Greedy Basic Theta* 
 		heur = Heuristics.H_ALPHA;
-		pathplanner = new Thetastar(dem, initnode, initnode, heur, false, withc);
-                pathplanner.change_name("Greedy Basic Theta*");
+		planner = new Thetastar(dem, initnode, initnode, heur, false, withc);
+                planner.change_name("Greedy Basic Theta*");
 		break;
 	    case 's': // S-Theta*
 		heur = Heuristics.H_ALPHA2;      
-		pathplanner = new Thetastar(dem, initnode, initnode, heur, false, withc);
-                pathplanner.change_name("S-Theta*");
+		planner = new Thetastar(dem, initnode, initnode, heur, false, withc);
+                planner.change_name("S-Theta*");
+		break;
+	    case 'j': // JPS
+		heur = Heuristics.H_OCTILE;
+		planner = new JPS(dem, initnode, initnode, heur, false, withc);
+		break;
+	    case 'k': // JPS+
+		heur = Heuristics.H_OCTILE;
+		planner = new JPS(dem, initnode, initnode, heur, false, withc, true);
+		break;
+	    case 'i': // Bidirectional A*
+	    case 'm': // Bidirectional A* with two threads
+		heur = Heuristics.H_OCTILE;
+		planner = new BiAstar(dem, initnode, initnode, heur, false, withc);
+		((BiAstar)planner).set_parallel(alg == 'm');
+		break;
+	    case 'y': // ARA*
+		heur = Heuristics.H_OCTILE;
+		planner = new ARAstar(dem, initnode, initnode, heur, false, withc);
+		break;
+	    case 'h': // HPA* (the workers share the abstract graph of the first search)
+		heur = Heuristics.H_OCTILE;
+		if(pathplanner instanceof HPAstar)
+		    planner = new HPAstar(dem, initnode, initnode, heur, false, withc, (HPAstar)pathplanner);
+		else
+		    planner = new HPAstar(dem, initnode, initnode, heur, false, withc);
 		break;
 	    case 'A': // A* with Z
 		heur = Heuristics.H_OCTILE_Z;
-		pathplanner = new Astar(dem, initnode, initnode, heur, true, withc);
+		planner = new Astar(dem, initnode, initnode, heur, true, withc);
 		break;
 	    case 'D': // Dijkstra with Z
 		heur = Heuristics.H_OCTILE_Z;
-		pathplanner = new Dijkstra(dem, initnode, initnode, heur, true, withc);
+		planner = new Dijkstra(dem, initnode, initnode, heur, true, withc);
 		break;
 	    default:
 		System.out.println("Invalid path-planning algorithm: "+alg);
-		return false;
+		return null;
 	}
-	// Open pipes
-        try{
-	    String abspath = new File("").getAbsolutePath();
-	    pipeWrite= new FileWriter(WriteToFF);
-	    pipeRead = new FileReader(ReadFromFF);
-        }catch(FileNotFoundException nf){
-            System.out.println("Cannot open file: " + nf.toString());
-	    return false;
-        }catch(IOException ioe){
-            System.out.println("Input/output error: " + ioe.toString());
-	    return false;
+	if(planner instanceof Astar)
+	    ((Astar)planner).set_weight(weight);
+	else if(planner instanceof Thetastar)
+	    ((Thetastar)planner).set_weight(weight);
+	return planner;
+    }
+    
+    /**
+     * Create a new search for the cost queries.
+     * @param planner search of the path-planning algorithm.
+     * @return The search for cost queries.
+     */
+    private SearchMethod new_greedy(SearchMethod planner)
+    {
+	SearchMethod greedy;
+        if(planner instanceof BiAstar) // Long cost queries also use the bidirectional search
+        {
+	    greedy = new BiAstar(dem, initnode, initnode, Heuristics.H_OCTILE, false, false);
+	    ((BiAstar)greedy).set_parallel(((BiAstar)planner).is_parallel());
         }
-	// Define formating for H and G values
-	java.text.DecimalFormatSymbols sim = new java.text.DecimalFormatSymbols();
-	sim.setGroupingSeparator(',');
-	sim.setDecimalSeparator('.');
-        formatf = new java.text.DecimalFormat("######.######",sim);
-	formatf.setGroupingSize(9);
-	formatf.setMinimumIntegerDigits(6);
-	return true; // OK
+        else if(planner instanceof HPAstar) // Share the abstract graph with cost queries
+	    greedy = planner;
+        else if(planner instanceof ARAstar) // Cost queries limited by the deadline
+	    greedy = new ARAstar(dem, initnode, initnode, Heuristics.H_OCTILE, false, false);
+        else if(planner.is_any_angle())
+	    greedy = new Thetastar(dem, initnode, initnode, Heuristics.H_ALPHA, false, false);
+	else
+	    greedy = new Astar(dem, initnode, initnode, Heuristics.H_ALPHA, false, false);
+	// The weight only applies to path queries: H_ALPHA is the euclidean distance (alpha factor 0), so cost queries stay optimal
+	return greedy;
     }
     
     /** 
@@ -148,32 +365,27 @@ public class TaskPlannerConnect {
      */
     public float runSearch()
     {
+	pathcost = 0;
+	pathdeg = 0;
+	dirant = 0;
+	fullpath = new ArrayList();
+	if(binary)
+	    return run_binary();
 	char[] readpoint = new char[10];
 	char[] readoption = new char[4];
 	String writebuff;
 	int nbread;
 	int caspos, delpos;
-	float cost = 0;
-	float deg = 0;
-	float partialcost = 0;
-	float partialdeg = 0;
-	float dirant = 0;
+	float partialcost;
 	Node start = new Node(0,0,0);
         Node goal = new Node(0,0,0);
-	fullpath = new ArrayList();
-	SearchMethod greedy; // For cost
-        if(pathplanner.is_any_angle())
-	    greedy = new Thetastar(dem, initnode, initnode, Heuristics.H_ALPHA, false, false);
-	else
-	    greedy = new Astar(dem, initnode, initnode, Heuristics.H_ALPHA, false, false);
 	do{ // Executes until EXIT command
 	try{
 	    nbread = pipeRead.read(readoption);
 	    if(readoption[0] == EXIT)
 	    {
-		System.out.println("#pathcost: "+cost);
-		System.out.println("#degrees_: "+deg);
-		return cost;
+		print_summary();
+		return pathcost;
 	    }
 	    
 	    // Read start point
@@ -199,70 +411,28 @@ public class TaskPlannerConnect {
 		    // Confirm goal point
 		    pipeWrite.write(writebuff);
 		    pipeWrite.flush();
-		    if(pathplanner.is_any_angle())
-		        writebuff = formatf.format(Heuristics.Heuclidean(start, goal));
-		    else
-			writebuff = formatf.format(Heuristics.Hoctile(start, goal));
+		    writebuff = formatf.format(heuristic(start, goal));
 		    pipeWrite.write(writebuff);
 		    pipeWrite.flush();
 		    break;
 		case PATH: // Perform search
+		    if(path(start, goal) < 0)
+			return -1;
+		    // Confirm goal point
+		    pipeWrite.write(writebuff);
+		    pipeWrite.flush();
+		    break;
 		case COST:
-		    if(!goal.equals(start))
-		    {
-		        if(readoption[0] == PATH)
-			{
-			    pathplanner.restart_search(start, goal);
-			    if(!pathplanner.search())
-				return -1;
-                            if(postprocess)
-                                ((Astar)pathplanner).search_ps();
-			    path = pathplanner.get_path();
-			    partialcost = (float)pathplanner.get_path_cost();
-			    partialdeg = (float)pathplanner.get_path_degrees();
-			    int dx = ((Node)path.get(path.size()-2)).getX() - ((Node)path.get(path.size()-1)).getX();
-			    int dy = ((Node)path.get(path.size()-2)).getY() - ((Node)path.get(path.size()-1)).getY();
-			    float dirinit = Geometry.Angle(dx, dy, Geometry.LongHyp(dx, dy));
-			    float dirchange = Math.abs(dirinit - dirant);
-			    if(dirchange > 180)
-				dirchange = 360 - dirchange;
-			    partialdeg += dirchange;
-			    dx = ((Node)path.get(0)).getX() - ((Node)path.get(1)).getX();
-			    dy = ((Node)path.get(0)).getY() - ((Node)path.get(1)).getY();
-			    dirant = Geometry.Angle(dx, dy, Geometry.LongHyp(dx, dy));
-			}
-			else
-			{
-			    greedy.restart_search(start, goal);
-			    if(!greedy.search())
-				return -1;
-                            greedy.get_path();
-			    partialcost = (float)greedy.get_path_cost();
-			}
-		    }
-		    else // Same points
-		    {
-			partialcost = 0;
-			partialdeg = 0;
-			path = new ArrayList();
-		    }
-		    if(readoption[0] == PATH)
-		    {
-			for(int i=path.size()-1; i>=0; i--)
-			    fullpath.add(0,path.get(i));
-                        print_moveto_path();
-			cost += partialcost;
-			deg += partialdeg;
-		    }
+		    partialcost = cost(start, goal);
+		    if(partialcost < 0)
+			return -1;
 		    // Confirm goal point
 		    pipeWrite.write(writebuff);
 		    pipeWrite.flush();
-		    if(readoption[0] == COST) // Send cost to planner
-		    {
-			writebuff = formatf.format(partialcost);
-			pipeWrite.write(writebuff);
-			pipeWrite.flush();
-		    }
+		    // Send cost to planner
+		    writebuff = formatf.format(partialcost);
+		    pipeWrite.write(writebuff);
+		    pipeWrite.flush();
 		    break;
 		default:
 		    System.out.println("Invalid command received.");
@@ -277,14 +447,443 @@ public class TaskPlannerConnect {
 	}while(true);
     }
     
+    /**
+     * Perform the communication with the task planner using the binary protocol.
+     * All the messages are frames of FRAME bytes in little-endian order, without
+     * confirmations. The requests contain the command, a request id and the
+     * coordinates of the start and goal points (x and y as in the PDDL cells) as
+     * 32 bits integers. The replies contain the command, the request id and a status
+     * (OK or NOPATH) as 32 bits integers, 4 unused bytes and the result as a double.
+     * The first request must be HELLO with the version of the protocol as start x.
+     * EXIT requests have no reply. A BATCH request contains several requests (see batch).
+     * @return the accumulate cost of the search if search is OK or less or equal 0 if it fails.
+     */
+    private float run_binary()
+    {
+	byte frame[] = new byte[FRAME];
+	ByteBuffer buf = ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN);
+	int option, id;
+	float value;
+	Node start, goal;
+	try{
+	    // Check the version
+	    pipeIn.readFully(frame);
+	    option = buf.getInt(0);
+	    id = buf.getInt(4);
+	    if(option != HELLO || buf.getInt(8) != VERSION)
+	    {
+		System.out.println("Unsupported protocol: "+(char)option+" "+buf.getInt(8));
+		reply(buf, HELLO, id, NOPATH, VERSION);
+		return -1;
+	    }
+	    reply(buf, HELLO, id, OK, VERSION);
+	    do{ // Executes until EXIT command
+		pipeIn.readFully(frame);
+		option = buf.getInt(0);
+		id = buf.getInt(4);
+		if(option == EXIT)
+		{
+		    print_summary();
+		    return pathcost;
+		}
+		start = new Node(buf.getInt(8), dem.get_rows()-buf.getInt(12), 0);
+		start.setParent(start); // For alpha-based heuristics
+		goal = new Node(buf.getInt(16), dem.get_rows()-buf.getInt(20), 0);
+		switch(option)
+		{
+		    case HEUR: // Calculate heuristic
+			reply(buf, option, id, OK, heuristic(start, goal));
+			break;
+		    case PATH: // Perform search
+			value = path(start, goal);
+			if(value < 0)
+			{
+			    reply(buf, option, id, NOPATH, -1);
+			    return -1;
+			}
+			reply(buf, option, id, OK, value);
+			break;
+		    case COST:
+			value = cost(start, goal);
+			if(value < 0)
+			{
+			    reply(buf, option, id, NOPATH, -1);
+			    return -1;
+			}
+			reply(buf, option, id, OK, value);
+			break;
+		    case BATCH:
+			batch(id, buf.getInt(8));
+			break;
+		    default: // Replied so the task planner does not wait forever
+			System.out.println("Invalid command received.");
+			reply(buf, option, id, NOPATH, -1);
+		}
+	    }while(true);
+	}catch(IOException ioe){
+	    System.out.println(ioe.toString()); 
+	    return -1;
+	}catch(Exception e){
+	    System.out.println(e.toString()+"\n Option "+buf.getInt(0)+" "+buf.getInt(8)+","+buf.getInt(12)+" > "+buf.getInt(16)+","+buf.getInt(20));
+	    return -1;
+	}
+    }
+    
+    /**
+     * Send a reply of the binary protocol.
+     * @param buf buffer of the frame.
+     * @param option command of the request.
+     * @param id id of the request.
+     * @param status OK or NOPATH.
+     * @param value result of the request.
+     * @throws IOException if the reply cannot be sent.
+     */
+    private void reply(ByteBuffer buf, int option, int id, int status, double value) throws IOException
+    {
+	put_reply(buf, 0, option, id, status, value);
+	pipeOut.write(buf.array());
+	pipeOut.flush();
+    }
+    
+    /**
+     * Write a reply of the binary protocol in a buffer.
+     * @param buf buffer of the frames.
+     * @param offset position of the frame in the buffer.
+     * @param option command of the request.
+     * @param id id of the request.
+     * @param status OK or NOPATH.
+     * @param value result of the request.
+     */
+    private void put_reply(ByteBuffer buf, int offset, int option, int id, int status, double value)
+    {
+	buf.putInt(offset, option);
+	buf.putInt(offset+4, id);
+	buf.putInt(offset+8, status);
+	buf.putInt(offset+12, 0);
+	buf.putDouble(offset+16, value);
+    }
+    
+    /**
+     * Solve a batch of requests of the binary protocol and send all the replies
+     * together. The BATCH frame contains the number of requests as start x and it is
+     * followed by the frames of the requests. The reply is a BATCH frame with the
+     * number of replies in the unused bytes, followed by the replies in the same
+     * order than the requests. The requests without path are replied with NOPATH, but
+     * the communication is not finished.
+     * The cost requests that are not in the cost matrix or in the cache are solved
+     * together by the workers, grouped by start point: the groups with several goals
+     * are solved with a multi-target search (optimal costs, like the cost matrix)
+     * only if the cost queries are also optimal (see exact_costs), so the costs do not
+     * depend on the requests of the batch.
+     * @param id id of the request.
+     * @param n number of requests of the batch.
+     * @throws IOException if the requests cannot be read or the replies cannot be sent.
+     */
+    private void batch(int id, int n) throws IOException
+    {
+	if(n < 0 || n > MAX_BATCH)
+	    throw new IOException("Invalid batch size: "+n);
+	byte frames[] = new byte[(n+1) * FRAME];
+	ByteBuffer buf = ByteBuffer.wrap(frames).order(ByteOrder.LITTLE_ENDIAN);
+	pipeIn.readFully(frames, FRAME, n * FRAME);
+	put_reply(buf, 0, BATCH, id, OK, 0);
+	buf.putInt(12, n);
+	Node starts[] = new Node[n];
+	Node goals[] = new Node[n];
+	float value;
+	int option, offset;
+	// Requests solved without searches, the remaining cost requests grouped by start
+	// (repeated ones, also in the other direction, are solved once)
+	LinkedHashMap groups = new LinkedHashMap();
+	LinkedHashMap repeated = new LinkedHashMap();
+	ArrayList group;
+	Long key;
+	for(int i = 0; i < n; i++)
+	{
+	    offset = (i+1) * FRAME;
+	    option = buf.getInt(offset);
+	    starts[i] = new Node(buf.getInt(offset+8), dem.get_rows()-buf.getInt(offset+12), 0);
+	    starts[i].setParent(starts[i]); // For alpha-based heuristics
+	    goals[i] = new Node(buf.getInt(offset+16), dem.get_rows()-buf.getInt(offset+20), 0);
+	    switch(option)
+	    {
+		case HEUR:
+		    put_reply(buf, offset, option, buf.getInt(offset+4), OK, heuristic(starts[i], goals[i]));
+		    break;
+		case PATH:
+		    value = path(starts[i], goals[i]);
+		    put_reply(buf, offset, option, buf.getInt(offset+4), value < 0? NOPATH : OK, value);
+		    break;
+		case COST:
+		    value = known_cost(starts[i], goals[i]);
+		    if(value >= 0 || (costs != null && costs.contains(starts[i], goals[i])))
+		    {
+			put_reply(buf, offset, option, buf.getInt(offset+4), value < 0? NOPATH : OK, value);
+			break;
+		    }
+		    key = cache_key(starts[i], goals[i], COST);
+		    group = (ArrayList)repeated.get(key);
+		    if(group != null)
+		    {
+			group.add(i);
+			break;
+		    }
+		    group = new ArrayList();
+		    group.add(i);
+		    repeated.put(key, group);
+		    Integer sid = dem.get_index(starts[i].getX(), starts[i].getY());
+		    group = (ArrayList)groups.get(sid);
+		    if(group == null)
+		    {
+			group = new ArrayList();
+			groups.put(sid, group);
+		    }
+		    group.add(i);
+		    break;
+		default:
+		    System.out.println("Invalid command received.");
+		    put_reply(buf, offset, option, buf.getInt(offset+4), NOPATH, -1);
+	    }
+	}
+	// Search the remaining costs
+	ArrayList queries = new ArrayList();
+	ArrayList requests = new ArrayList();
+	QueryPool.Query query;
+	Node targets[];
+	for(Object g : groups.values())
+	{
+	    group = (ArrayList)g;
+	    if(group.size() > 1 && exact_costs())
+	    {
+		targets = new Node[group.size()];
+		for(int i = 0; i < targets.length; i++)
+		    targets[i] = goals[(Integer)group.get(i)];
+		query = new QueryPool.Query(starts[(Integer)group.get(0)], targets);
+		queries.add(query);
+		requests.add(group);
+	    }
+	    else
+		for(int i = 0; i < group.size(); i++)
+		{
+		    queries.add(new QueryPool.Query(starts[(Integer)group.get(i)], goals[(Integer)group.get(i)], false));
+		    requests.add(group.get(i));
+		}
+	}
+	if(!queries.isEmpty())
+	    pool.solve((QueryPool.Query[])queries.toArray(new QueryPool.Query[queries.size()]));
+	int r;
+	for(int q = 0; q < queries.size(); q++)
+	{
+	    query = (QueryPool.Query)queries.get(q);
+	    if(query.get_costs() == null)
+	    {
+		r = (Integer)requests.get(q);
+		batch_cost(buf, (ArrayList)repeated.get(cache_key(starts[r], goals[r], COST)), starts[r], goals[r], query.found()? query.get_cost() : -1);
+		continue;
+	    }
+	    group = (ArrayList)requests.get(q);
+	    for(int i = 0; i < group.size(); i++)
+	    {
+		r = (Integer)group.get(i);
+		batch_cost(buf, (ArrayList)repeated.get(cache_key(starts[r], goals[r], COST)), starts[r], goals[r], query.get_costs()[i]);
+	    }
+	}
+	pipeOut.write(frames);
+	pipeOut.flush();
+    }
+    
+    /**
+     * Store the result of a cost request of a batch in the cache and in the replies
+     * of the request and its repetitions.
+     * @param buf buffer of the frames of the batch.
+     * @param requests indexes in the batch of the request and its repetitions.
+     * @param start start point.
+     * @param goal goal point.
+     * @param value cost found, -1 if there is no path.
+     */
+    private void batch_cost(ByteBuffer buf, ArrayList requests, Node start, Node goal, float value)
+    {
+	int offset;
+	if(value >= 0 && cache != null)
+	    cache.put(cache_key(start, goal, COST), value, 0, null);
+	for(int i = 0; i < requests.size(); i++)
+	{
+	    offset = ((Integer)requests.get(i)+1) * FRAME;
+	    put_reply(buf, offset, COST, buf.getInt(offset+4), value < 0? NOPATH : OK, value);
+	}
+    }
+    
+    /**
+     * Check if the cost queries find optimal costs without traversal costs, the cost
+     * model of the multi-target search (see Dijkstra.search(Node[])). It is false for
+     * any-angle algorithms, HPA* (costs of the abstract graph) and ARA* (costs limited
+     * by the deadline). The weight of the heuristic only applies to the path queries.
+     * @return True if the cost queries are optimal.
+     */
+    private boolean exact_costs()
+    {
+	return !pathplanner.is_any_angle() && !(pathplanner instanceof HPAstar) && !(pathplanner instanceof ARAstar);
+    }
+    
+    /**
+     * Calculate the heuristic between two points: the cost if it is in the cost
+     * matrix or the octile (euclidean for any-angle algorithms) distance.
+     * @param start start point.
+     * @param goal goal point.
+     * @return The heuristic value.
+     */
+    private float heuristic(Node start, Node goal)
+    {
+	if(costs != null && costs.get_cost(start, goal) >= 0)
+	    return costs.get_cost(start, goal);
+	else if(pathplanner.is_any_angle())
+	    return Heuristics.Heuclidean(start, goal);
+	else
+	    return Heuristics.Hoctile(start, goal);
+    }
+    
+    /**
+     * Calculate the cost between two points, from the cost matrix, the cache or a search.
+     * @param start start point.
+     * @param goal goal point.
+     * @return The cost or -1 if there is no path.
+     */
+    private float cost(Node start, Node goal)
+    {
+	float value = known_cost(start, goal);
+	if(value >= 0 || (costs != null && costs.contains(start, goal)))
+	    return value;
+	long key = cache_key(start, goal, COST);
+	QueryPool.Query query = new QueryPool.Query(start, goal, false);
+	pool.solve(new QueryPool.Query[]{query});
+	if(!query.found())
+	    return -1;
+	if(cache != null)
+	    cache.put(key, query.get_cost(), 0, null);
+	return query.get_cost();
+    }
+    
+    /**
+     * Get the cost between two points without any search: from the cost matrix or
+     * the cache.
+     * @param start start point.
+     * @param goal goal point.
+     * @return The cost, or -1 if it is not known or there is no path (cost matrix).
+     */
+    private float known_cost(Node start, Node goal)
+    {
+	if(goal.equals(start))
+	    return 0;
+	if(costs != null && costs.contains(start, goal))
+	    return costs.get_cost(start, goal);
+	int entry = cache == null? -1 : cache.find(cache_key(start, goal, COST));
+	if(entry >= 0)
+	    return cache.get_cost(entry);
+	return -1;
+    }
+    
+    /**
+     * Search the path between two points (or get it from the cache), print it and
+     * add it to the complete path.
+     * @param start start point.
+     * @param goal goal point.
+     * @return The cost of the path or -1 if there is no path.
+     */
+    private float path(Node start, Node goal)
+    {
+	float partialcost = 0;
+	float partialdeg = 0;
+	if(goal.equals(start))
+	    path = new ArrayList();
+	else
+	{
+	    long key = cache_key(start, goal, PATH);
+	    int entry = cache == null? -1 : cache.find(key);
+	    if(entry >= 0)
+	    {
+		path = cache.get_path(entry);
+		partialcost = cache.get_cost(entry);
+		partialdeg = cache.get_degrees(entry);
+	    }
+	    else
+	    {
+		QueryPool.Query query = new QueryPool.Query(start, goal, true);
+		pool.solve(new QueryPool.Query[]{query});
+		if(!query.found())
+		    return -1;
+		path = query.get_path();
+		partialcost = query.get_cost();
+		partialdeg = query.get_degrees();
+		if(cache != null)
+		    cache.put(key, partialcost, partialdeg, path);
+	    }
+	    int dx = ((Node)path.get(path.size()-2)).getX() - ((Node)path.get(path.size()-1)).getX();
+	    int dy = ((Node)path.get(path.size()-2)).getY() - ((Node)path.get(path.size()-1)).getY();
+	    float dirinit = Geometry.Angle(dx, dy, Geometry.LongHyp(dx, dy));
+	    float dirchange = Math.abs(dirinit - dirant);
+	    if(dirchange > 180)
+		dirchange = 360 - dirchange;
+	    partialdeg += dirchange;
+	    dx = ((Node)path.get(0)).getX() - ((Node)path.get(1)).getX();
+	    dy = ((Node)path.get(0)).getY() - ((Node)path.get(1)).getY();
+	    dirant = Geometry.Angle(dx, dy, Geometry.LongHyp(dx, dy));
+	}
+	for(int i=path.size()-1; i>=0; i--)
+	    fullpath.add(0,path.get(i));
+	print_moveto_path();
+	pathcost += partialcost;
+	pathdeg += partialdeg;
+	return partialcost;
+    }
+    
+    /**
+     * Print the accumulated cost and degrees of the paths, and the cache statistics.
+     */
+    private void print_summary()
+    {
+	System.out.println("#pathcost: "+pathcost);
+	System.out.println("#degrees_: "+pathdeg);
+	if(cache != null)
+	    System.out.println("#cache___: "+cache.get_hits()+" hits, "+cache.get_misses()+" misses");
+    }
+    
+    /**
+     * Get the key of a query for the cache. The moves have the same cost in both
+     * directions, so cost queries use the same key for both orders of the points.
+     * @param start start point.
+     * @param goal goal point.
+     * @param option command of the query (PATH or COST).
+     * @return The key of the query.
+     */
+    private long cache_key(Node start, Node goal, short option)
+    {
+        int sid = dem.get_index(start.getX(), start.getY());
+        int gid = dem.get_index(goal.getX(), goal.getY());
+        int flags = cacheflags | (option == PATH? 0x100 : 0);
+        if(option == COST && gid < sid)
+            return PathCache.key(gid, sid, flags);
+        return PathCache.key(sid, gid, flags);
+    }
+    
     /**
      * Close pipes.
      */
     public void close()
     {
+	pool.close();
 	try{
-	 pipeRead.close();
-	 pipeWrite.close();
+	 if(channel != null)
+	  channel.close();
+	 else if(binary)
+	 {
+	  pipeIn.close();
+	  pipeOut.close();
+	 }
+	 else
+	 {
+	  pipeRead.close();
+	  pipeWrite.close();
+	 }
 	}catch(IOException ioe){System.out.println("Problem closing pipes: "+ioe.toString());}
     }
     
@@ -1,6 +1,5 @@
 package PathPlanning;
 
-import java.util.*;
 
 
 /**
@@ -12,9 +11,9 @@ import java.util.*;
 public class Thetastar extends SearchMethod {
     
     /** Open nodes list, sorted by F. */
-    private List<Node> open;
-    /** Closed nodes table. */
-    private Hashtable closed;
+    private OpenList open;
+    /** Weight of the heuristic (f = g + weight*h), 1 for the original algorithm. */
+    private float weight = 1;
     
     
     /**
@@ -29,12 +28,30 @@ public class Thetastar extends SearchMethod {
     public Thetastar(Map dem, Node init, Node end, short heur, boolean withz, boolean withc)
     {
         super("Basic Theta*", dem, init, end, heur, withz, withc, true);
-	open = new ArrayList();
-	closed = new Hashtable();
+	open = new OpenList(dem, state);
         // Change tie breaking flag
         Node.ChangeTieBreakingFlag();
     }
     
+    /**
+     * Change the weight of the heuristic (weighted Theta*). Unlike weighted A*, the cost of
+     * the path has no bound (Theta* is not optimal even without weight).
+     * @param w new weight (greater or equal to 1).
+     */
+    public void set_weight(float w)
+    {
+        if(w >= 1)
+            weight = w;
+    }
+
+    /**
+     * @return The weight of the heuristic.
+     */
+    public float get_weight()
+    {
+        return weight;
+    }
+    
     @Override
     /**
      * Clear internal data of the algorithm.
@@ -42,7 +59,7 @@ public class Thetastar extends SearchMethod {
     protected void clear_internal_data()
     {
 	open.clear();
-	closed.clear();
+	state.clear_closed();
     }
     
     /**
@@ -54,23 +71,22 @@ public class Thetastar extends SearchMethod {
     {
         if(!check_valid_data())
             return false;
-        ArrayList<Node> succlist = new ArrayList();
         
         // Set initial state
-        start.setParent(start);
-        map.get_node(start.getX(), start.getY()).setParent(start);
-        map.get_node(start.getX(), start.getY()).setF(0, get_h(start, start, goal));
-        open.add(map.get_node(start.getX(), start.getY()));
+        int sid = index(start);
+        state.set_parent(sid, sid);
+        state.set_f(sid, 0, weight * get_h(start, start, goal));
+        open.add(sid);
         Node pos;
         // Auxiliary variables
-        Node aux;
+        int nsucc;
         
         // Begin search
         start_cpu_counter();
         while(!open.isEmpty())
         {            
-            pos = open.remove(0);
-            closed.put(pos.hashCode(), pos);
+            pos = map.get_node(open.poll());
+            state.close(index(pos));
             expnodes++;
 
             // If position is solution => finish
@@ -82,15 +98,12 @@ public class Thetastar extends SearchMethod {
             }
             
             // Generate succesors for actual point
-            succlist = map.get_succesors_without_obstacles(pos);
-            for(int i=0; i < succlist.size(); i++)
+            nsucc = map.get_succesors(index(pos), succlist);
+            for(int i=0; i < nsucc; i++)
             {
-                aux = succlist.get(i);
-                if(closed.get(aux.hashCode()) == null)
-                    updateVertex(pos, aux);
+                if(!state.is_closed(succlist[i]))
+                    updateVertex(pos, map.get_node(succlist[i]));
             }// End of succesor check
-            // Sort open list
-            Collections.sort(open);
 
         } // Open list is empty, no path found
         end_cpu_counter();
@@ -108,46 +121,43 @@ public class Thetastar extends SearchMethod {
         float hsuc, gsuc;
         int x = succ.getX();
         int y = succ.getY();
+        int id = index(succ);
+        Node parent = get_parent(pos);
 
         if(heuristic == Heuristics.H_ALPHA2) 
         {
-            if(succ.A == -1)
-                succ.A = Geometry.LongHyp(goal.getX() - x, goal.getY() - y);
-            if(pos.getParent().A == -1)
-                pos.getParent().A = Geometry.LongHyp(goal.getX() - pos.getParent().getX(), goal.getY() - pos.getParent().getY());
-            float ang = Geometry.Angle(Geometry.LongHyp(x - pos.getParent().getX(), y - pos.getParent().getY()), succ.A, pos.getParent().A);
-                hsuc = succ.A + (ang * map.get_cols()/100);
-                gsuc = get_g(pos.getParent(), succ, true);
+            float ang = Geometry.Angle(Geometry.LongHyp(x - parent.getX(), y - parent.getY()), get_a(succ), get_a(parent));
+                hsuc = get_a(succ) + (ang * map.get_cols()/100);
+                gsuc = get_g(parent, succ);
         }
         else // Basic Theta*
         {
             hsuc = get_h(pos, succ, goal);
-            gsuc = get_g(pos.getParent(), succ, true);
+            gsuc = get_g(parent, succ);
         }
+        hsuc *= weight;
         
         if(gsuc > 0)
         {
             // Path 2
-            if(gsuc < succ.getG())
+            if(gsuc < state.get_g(id))
             {
-                map.get_node(x, y).setF(gsuc, hsuc);
-                map.get_node(x, y).setParent(pos.getParent());
-                // Remove succesor from open if is contained and insert succesors in open list
-                open.remove(map.get_node(x, y));
-                open.add(map.get_node(x, y));
+                state.set_f(id, gsuc, hsuc);
+                state.set_parent(id, index(parent));
+                // Insert succesor in open list or update its position if is contained
+                open.update(id);
             }
         }
         else
         {
             // Path 1 (A*)
-            gsuc = get_g(pos, succ, true);
-            if(gsuc < succ.getG() || (withc && gsuc <= succ.getG()))
+            gsuc = get_g(pos, succ);
+            if(gsuc < state.get_g(id) || (withc && gsuc <= state.get_g(id)))
             {
-                map.get_node(x, y).setF(gsuc, hsuc);
-                map.get_node(x, y).setParent(pos);
-                // Remove succesor from open if is contained and insert succesors in open list
-                open.remove(map.get_node(x, y));
-                open.add(map.get_node(x, y));
+                state.set_f(id, gsuc, hsuc);
+                state.set_parent(id, index(pos));
+                // Insert succesor in open list or update its position if is contained
+                open.update(id);
             }
         }
     }
@@ -160,7 +170,7 @@ public class Thetastar extends SearchMethod {
     {
         System.out.println("Open:");
         for(int i=0; i < open.size(); i++)
-            System.out.println("    " + open.get(i).toString() + "  P:"+open.get(i).getParent());
+            System.out.println("    " + node_info(open.get(i)) + "  P:"+node_info(state.get_parent(open.get(i))));
         System.out.println();
     }
 
@@ -169,12 +179,21 @@ public class Thetastar extends SearchMethod {
      */
     private void print_closed()
     {
-        Enumeration<Node> li;
-        li = closed.elements();
         System.out.println("Closed:");
-        for(int i=0; i < closed.size(); i++)
-            System.out.println("      "+li.nextElement().toString());
+        for(int i=0; i < map.get_cols()*map.get_rows(); i++)
+            if(state.is_closed(i))
+                System.out.println("      "+node_info(i));
         System.out.println();
     }
 
+    /**
+     * @return A string with the number of steps and cost of the path, and an unknown
+     * sub-optimality bound when the heuristic is weighted.
+     */
+    @Override
+    public String path_info()
+    {
+        return super.path_info() + (weight > 1? "#subopt-b: unknown\n" : "");
+    }
+
 }
@@ -511,21 +511,34 @@ int main( int argc, char *argv[] )
 		exit(-1);
 	}
 
+	/* La memoria compartida se crea antes que el proceso hijo, que la abre al arrancar */
+	if(transporteMemoria() && !crearMemoria(NOMBRE_MEMORIA))
+	{
+		printf("Task-PathPlanner: cannot create %s.\n", NOMBRE_MEMORIA);
+		exit(-1);
+	}
+
 	int pid;
 	pid = fork();
 	if(pid == 0){
 		/*Proceso hijo*/
+		/* El fichero de problema (argv[4]) permite precalcular los costes entre sus celdas */
 		if(argc == 7)
 			execl("/usr/share/pathplanning.sh", "/usr/share/pathplanning.sh",argv[5],argv[6],argv[7],NULL);
+		else if(argc == 8)
+			execl("/usr/share/pathplanning.sh", "/usr/share/pathplanning.sh",argv[5],argv[6],argv[7],"-",argv[4],NULL);
 		else
-			execl("/usr/share/pathplanning.sh", "/usr/share/pathplanning.sh",argv[5],argv[6],argv[7],argv[8],NULL);
+			execl("/usr/share/pathplanning.sh", "/usr/share/pathplanning.sh",argv[5],argv[6],argv[7],argv[8],argv[4],NULL);
 		perror("execl(/usr/share/pathplanning.sh);: ");
 		exit (-1);
 	} else {
 		/*Proceso padre*/
 		if (pid > 0) {
-			fdPipeAstarff = abrirTuberiaLectura (NOMBRE_TUBERIA_AstarFF, 460, O_RDONLY);
-			fdPipeffAstar = abrirTuberiaEscritura (NOMBRE_TUBERIA_FFAstar, 460, O_WRONLY);
+			if(!transporteMemoria())
+			{
+				fdPipeAstarff = abrirTuberiaLectura (NOMBRE_TUBERIA_AstarFF, 460, O_RDONLY);
+				fdPipeffAstar = abrirTuberiaEscritura (NOMBRE_TUBERIA_FFAstar, 460, O_WRONLY);
+			}
 			inicializar(&costes);
 			inicializar(&heuristicas);
 
@@ -770,8 +783,13 @@ int main( int argc, char *argv[] )
 				sleep(2);
 				exit(status);
 			} 
-			cerrarTuberia(fdPipeAstarff);
-			cerrarTuberia(fdPipeffAstar);
+			if(transporteMemoria())
+				cerrarMemoria();
+			else
+			{
+				cerrarTuberia(fdPipeAstarff);
+				cerrarTuberia(fdPipeffAstar);
+			}
 			/*mostrar(&costes);*/
 			liberar(&costes);
 			/*mostrar(&heuristicas);*/
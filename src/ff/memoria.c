@@ -0,0 +1,199 @@
+/*********************************************************************
+ * File: memoria.c
+ * Description: envio y recepcion de datos por memoria compartida
+ *
+ * Transporte alternativo a las tuberias: un fichero proyectado en memoria por
+ * los dos procesos con dos buffers circulares, uno para las peticiones de FF y
+ * otro para las respuestas del planificador de caminos. Solo se utiliza con el
+ * protocolo binario y mantiene sus mensajes.
+ *
+ *********************************************************************/
+
+#define _POSIX_C_SOURCE 200112L
+
+#include <string.h>
+#include <time.h>
+#include <sched.h>
+#include <sys/mman.h>
+#include <sys/wait.h>
+#include "proyecto.h"
+
+/*
+ * Posiciones de la cabecera: pid de FF y contadores de bytes escritos y leidos
+ * de cada buffer (cada uno en su linea de cache).
+ */
+#define POS_PID 0
+#define POS_ESCRITOS_PETICIONES 64
+#define POS_LEIDOS_PETICIONES 128
+#define POS_ESCRITOS_RESPUESTAS 192
+#define POS_LEIDOS_RESPUESTAS 256
+
+/* Esperas activas (con varios procesadores) antes de ceder el procesador y antes de dormir */
+#define ESPERAS_ACTIVAS 2000
+#define ESPERAS_CEDIDAS 200
+/* Esperas dormidas entre las comprobaciones del proceso hijo */
+#define ESPERAS_COMPROBACION 1000
+
+static int transporte = -1;
+static int fdMemoria = -1;
+static int esperasActivas = ESPERAS_ACTIVAS;
+static unsigned char *memoria = NULL;
+
+/*
+ * Determina el transporte la primera vez que se llama (variable de entorno
+ * VARIABLE_TRANSPORTE, heredada por el planificador de caminos).
+ * Devuelve 1 para la memoria compartida y 0 para las tuberias.
+ */
+
+int transporteMemoria(void){
+	if(transporte < 0)
+	{
+		char *valor = getenv(VARIABLE_TRANSPORTE);
+		transporte = (valor != NULL && strcmp(valor, "shm") == 0)? 1 : 0;
+	}
+	return transporte;
+}
+
+static volatile unsigned int *contador(int posicion){
+	return (volatile unsigned int *)(memoria + posicion);
+}
+
+/*
+ * Crea (o vacia) el fichero de memoria compartida y lo proyecta en memoria.
+ * Se llama antes de crear el proceso hijo, que lo abre al arrancar.
+ * Devuelve 0 si no se puede crear.
+ */
+
+int crearMemoria(const char *nombre){
+	fdMemoria = open(nombre, O_RDWR | O_CREAT | O_TRUNC, 0600);
+	if(fdMemoria < 0)
+	{
+		my_perror("open");
+		return 0;
+	}
+	if(ftruncate(fdMemoria, T_MEMORIA) != 0)
+	{
+		my_perror("ftruncate");
+		return 0;
+	}
+	memoria = (unsigned char *) mmap(NULL, T_MEMORIA, PROT_READ | PROT_WRITE, MAP_SHARED, fdMemoria, 0);
+	if(memoria == (unsigned char *) MAP_FAILED)
+	{
+		my_perror("mmap");
+		memoria = NULL;
+		return 0;
+	}
+	/* Con un solo procesador la espera activa retrasa al otro proceso */
+	if(sysconf(_SC_NPROCESSORS_ONLN) <= 1)
+		esperasActivas = 0;
+	memset(memoria, 0, T_CABECERA);
+	*contador(POS_PID) = (unsigned int) getpid();
+	return 1;
+}
+
+/*
+ * Espera a que cambie un contador escrito por el otro proceso: primero de forma
+ * activa, despues cediendo el procesador y finalmente durmiendo. Si el proceso
+ * hijo ha terminado se aborta.
+ */
+
+static void esperar(int *esperas){
+	struct timespec pausa;
+	int st;
+	(*esperas)++;
+	if(*esperas < esperasActivas)
+		return;
+	if(*esperas < esperasActivas + ESPERAS_CEDIDAS)
+	{
+		sched_yield();
+		return;
+	}
+	pausa.tv_sec = 0;
+	pausa.tv_nsec = 50000;
+	nanosleep(&pausa, NULL);
+	if((*esperas - esperasActivas - ESPERAS_CEDIDAS) % ESPERAS_COMPROBACION == 0 && waitpid(-1, &st, WNOHANG) > 0)
+	{
+		printf("\rError en la comunicacion con el planificador de caminos.\n");
+		exit(1);
+	}
+}
+
+/*
+ * Escribe count bytes en el buffer de peticiones, esperando si esta lleno.
+ */
+
+void enviarMemoria(const void *buf, size_t count){
+	volatile unsigned int *escritos = contador(POS_ESCRITOS_PETICIONES);
+	volatile unsigned int *leidos = contador(POS_LEIDOS_PETICIONES);
+	unsigned char *datos = memoria + T_CABECERA;
+	const unsigned char *origen = (const unsigned char *) buf;
+	unsigned int libres, pos, n;
+	int esperas = 0;
+	while(count > 0)
+	{
+		libres = T_ANILLO - (*escritos - *leidos);
+		if(libres == 0)
+		{
+			esperar(&esperas);
+			continue;
+		}
+		esperas = 0;
+		pos = *escritos % T_ANILLO;
+		n = (count < libres)? count : libres;
+		if(n > T_ANILLO - pos)
+			n = T_ANILLO - pos;
+		memcpy(datos + pos, origen, n);
+		/* Los datos deben ser visibles antes que el contador */
+		__sync_synchronize();
+		*escritos += n;
+		origen += n;
+		count -= n;
+	}
+}
+
+/*
+ * Lee count bytes del buffer de respuestas, esperando a que esten disponibles.
+ */
+
+void recibirMemoria(void *buf, size_t count){
+	volatile unsigned int *escritos = contador(POS_ESCRITOS_RESPUESTAS);
+	volatile unsigned int *leidos = contador(POS_LEIDOS_RESPUESTAS);
+	unsigned char *datos = memoria + T_CABECERA + T_ANILLO;
+	unsigned char *destino = (unsigned char *) buf;
+	unsigned int disponibles, pos, n;
+	int esperas = 0;
+	while(count > 0)
+	{
+		disponibles = *escritos - *leidos;
+		if(disponibles == 0)
+		{
+			esperar(&esperas);
+			continue;
+		}
+		esperas = 0;
+		/* El contador se lee antes que los datos */
+		__sync_synchronize();
+		pos = *leidos % T_ANILLO;
+		n = (count < disponibles)? count : disponibles;
+		if(n > T_ANILLO - pos)
+			n = T_ANILLO - pos;
+		memcpy(destino, datos + pos, n);
+		__sync_synchronize();
+		*leidos += n;
+		destino += n;
+		count -= n;
+	}
+}
+
+/*
+ * Libera la memoria compartida.
+ */
+
+void cerrarMemoria(void){
+	if(memoria != NULL)
+		munmap(memoria, T_MEMORIA);
+	if(fdMemoria >= 0)
+		close(fdMemoria);
+	memoria = NULL;
+	fdMemoria = -1;
+}
@@ -54,6 +54,8 @@
 
 
 
+#include <string.h>
+
 #include "ff.h"
 
 #include "output.h"
@@ -733,6 +735,155 @@ void print_ft_name( int index )
 		extern t_cache costes;
 		extern t_cache heuristicas;
 
+		/*
+		 * Protocolo de comunicacion: -1 sin determinar, 0 texto, 1 binario
+		 * (ver proyecto.h), y el id de la ultima peticion del protocolo binario.
+		 */
+
+		static int protocolo = -1;
+		static int id_peticion = 0;
+
+		/*
+		 * Codificacion en little-endian de los enteros y los double de las tramas.
+		 */
+
+		static void escribirEntero(unsigned char *buf, long v){
+			unsigned long u = (unsigned long) v;
+			buf[0] = u & 0xFF;
+			buf[1] = (u >> 8) & 0xFF;
+			buf[2] = (u >> 16) & 0xFF;
+			buf[3] = (u >> 24) & 0xFF;
+		}
+
+		static long leerEntero(const unsigned char *buf){
+			unsigned long u = buf[0] | ((unsigned long) buf[1] << 8) | ((unsigned long) buf[2] << 16) | ((unsigned long) buf[3] << 24);
+			return (u & 0x80000000UL)? -(long)((~u & 0xFFFFFFFFUL) + 1) : (long) u;
+		}
+
+		static double leerDouble(const unsigned char *buf){
+			unsigned char bytes[sizeof(double)];
+			double d;
+			int i, uno = 1;
+			/* Orden de los bytes de la maquina */
+			for(i = 0; i < 8; i++)
+				bytes[*(char *)&uno? i : 7-i] = buf[i];
+			memcpy(&d, bytes, sizeof(double));
+			return d;
+		}
+
+		/*
+		 * Codifica una peticion del protocolo binario entre dos celdas (nombres C<x>_<y>,
+		 * NULL para no enviar celda).
+		 */
+
+		static void codificarPeticion(unsigned char *trama, int opcion, int id, const char *origen, const char *destino){
+			int x1 = 0, y1 = 0, x2 = 0, y2 = 0;
+			if(origen != NULL)
+				sscanf(origen+1, "%d_%d", &x1, &y1);
+			if(destino != NULL)
+				sscanf(destino+1, "%d_%d", &x2, &y2);
+			escribirEntero(trama, opcion);
+			escribirEntero(trama+4, id);
+			escribirEntero(trama+8, x1);
+			escribirEntero(trama+12, y1);
+			escribirEntero(trama+16, x2);
+			escribirEntero(trama+20, y2);
+		}
+
+		/*
+		 * Envia las tramas de una peticion (count bytes) por el transporte seleccionado.
+		 */
+
+		static void enviarTramas(const unsigned char *buf, size_t count){
+			if(transporteMemoria())
+				enviarMemoria(buf, count);
+			else
+				enviarTuberia(fdPipeffAstar, buf, count);
+		}
+
+		/*
+		 * Recibe las tramas de una respuesta completa (count bytes).
+		 */
+
+		static void recibirTramas(unsigned char *buf, size_t count){
+			size_t leidos = 0, n;
+			if(transporteMemoria())
+			{
+				recibirMemoria(buf, count);
+				return;
+			}
+			while(leidos < count)
+			{
+				n = recibirTuberia(fdPipeAstarff, buf+leidos, count-leidos);
+				if(n == 0 || n == (size_t)-1)
+				{
+					printf("\rError en la comunicacion con el planificador de caminos.\n");
+					exit(1);
+				}
+				leidos += n;
+			}
+		}
+
+		/*
+		 * Comprueba que una respuesta corresponde a la peticion enviada.
+		 */
+
+		static void comprobarRespuesta(const unsigned char *trama, int opcion, int id){
+			if(leerEntero(trama) != opcion || leerEntero(trama+4) != id)
+			{
+				printf("\rRespuesta inesperada del planificador de caminos.\n");
+				exit(1);
+			}
+		}
+
+		/*
+		 * Envia una peticion del protocolo binario entre dos celdas (nombres C<x>_<y>,
+		 * NULL para no enviar celda) y espera la respuesta, salvo para MENSAJE_SALIR.
+		 * El valor de la respuesta se guarda en valor (si no es NULL).
+		 * Devuelve el estado de la respuesta.
+		 */
+
+		static int enviarPeticion(int opcion, const char *origen, const char *destino, double *valor){
+			unsigned char trama[T_TRAMA];
+			id_peticion++;
+			codificarPeticion(trama, opcion, id_peticion, origen, destino);
+			if(opcion == MENSAJE_VERSION)
+				escribirEntero(trama+8, VERSION_PROTOCOLO);
+			enviarTramas(trama, T_TRAMA);
+			if(opcion == MENSAJE_SALIR)
+				return RESPUESTA_OK;
+			recibirTramas(trama, T_TRAMA);
+			comprobarRespuesta(trama, opcion, id_peticion);
+			if(valor != NULL)
+				*valor = leerDouble(trama+16);
+			return (int) leerEntero(trama+8);
+		}
+
+		/*
+		 * Determina el protocolo la primera vez que se llama. Con el protocolo binario
+		 * comprueba que el planificador de caminos utiliza la misma version.
+		 * Devuelve 1 para el protocolo binario y 0 para el de texto.
+		 */
+
+		static int protocoloBinario(void){
+			if(protocolo < 0)
+			{
+				char *valor = getenv(VARIABLE_PROTOCOLO);
+				protocolo = (valor != NULL && strcmp(valor, "text") == 0)? 0 : 1;
+				if(!protocolo && transporteMemoria())
+				{
+					printf("\rEl protocolo de texto no se puede utilizar con la memoria compartida.\n");
+					exit(1);
+				}
+				if(protocolo && enviarPeticion(MENSAJE_VERSION, NULL, NULL, NULL) != RESPUESTA_OK)
+				{
+					printf("\rVersion del protocolo no soportada por el planificador de caminos.\n");
+					exit(1);
+				}
+			}
+			return protocolo;
+		}
+
 		/*
 		 * Esta funcion notifica al proceso hijo que necesita un valor heuristico.
 		 * Le proporciona los puntos sobre los que calcular dicho valor y
@@ -770,6 +921,16 @@ void print_ft_name( int index )
 				} else {
 					/*printf("%s", a->name );*/
 					/*printf("FALLO! %s - %s\n", gconstants[a->name_inst_table[0]], gconstants[a->name_inst_table[1]]);*/
+					double hval;
+					if(protocoloBinario())
+					{
+						/* Sin respuesta valida se usa 0, lo mismo que da atof con una respuesta de texto
+						   invalida, y no se guarda en la cache para volver a pedirla */
+						if(enviarPeticion(MENSAJE_HEURISTICA, gconstants[a->name_inst_table[c1]], gconstants[a->name_inst_table[c1+1]], &hval) != RESPUESTA_OK)
+							return 0.0;
+					}
+					else
+					{
 					int opcion;
 					opcion = MENSAJE_HEURISTICA; 
 					enviarTuberia(fdPipeffAstar, &opcion, sizeof(opcion));
@@ -783,7 +944,8 @@ void print_ft_name( int index )
 					recibirTuberia(fdPipeAstarff,conf_punto,T_PUNTO);
 					char char_h[50];
 					recibirTuberia(fdPipeAstarff,&char_h,sizeof(char_h));
-					double hval = (double) atof(char_h);
+					hval = (double) atof(char_h);
+					}
 					setElemento(&heuristicas,getIndexHASH(&(heuristicas.hash),gconstants[a->name_inst_table[c1]],heuristicas.dimensiones),getIndexHASH(&(heuristicas.hash),gconstants[a->name_inst_table[c1+1]],heuristicas.dimensiones), hval);
 					setElemento(&heuristicas,getIndexHASH(&(heuristicas.hash),gconstants[a->name_inst_table[c1+1]],heuristicas.dimensiones),getIndexHASH(&(heuristicas.hash),gconstants[a->name_inst_table[c1]],heuristicas.dimensiones), hval);
 					return hval;
@@ -826,6 +988,16 @@ void print_ft_name( int index )
 				} else {
 					/*printf("%s", a->name );*/
 					/*printf("FALLO! %s - %s\n", gconstants[a->name_inst_table[0]], gconstants[a->name_inst_table[1]]);*/
+					double cval;
+					if(protocoloBinario())
+					{
+						if(enviarPeticion(MENSAJE_COSTE, gconstants[a->name_inst_table[c1]], gconstants[a->name_inst_table[c1+1]], &cval) != RESPUESTA_OK){
+							printf("\rA estrella no encontro solución a una de las transiciones entre tareas.\n");
+							exit(1);
+						}
+					}
+					else
+					{
 					int opcion;
 					opcion = MENSAJE_COSTE; 
 					enviarTuberia(fdPipeffAstar, &opcion, sizeof(opcion));				
@@ -843,7 +1015,8 @@ void print_ft_name( int index )
 					}
 					char char_h[50];
 					recibirTuberia(fdPipeAstarff,&char_h,sizeof(char_h));
-					double cval = (double) atof(char_h);
+					cval = (double) atof(char_h);
+					}
 					setElemento(&costes,getIndexHASH(&(costes.hash),gconstants[a->name_inst_table[c1]],costes.dimensiones),getIndexHASH(&(costes.hash),gconstants[a->name_inst_table[c1+1]],costes.dimensiones), cval);
 					setElemento(&costes,getIndexHASH(&(costes.hash),gconstants[a->name_inst_table[c1+1]],costes.dimensiones),getIndexHASH(&(costes.hash),gconstants[a->name_inst_table[c1]],costes.dimensiones), cval);
 					return cval;
@@ -851,6 +1024,96 @@ void print_ft_name( int index )
 			}
 		}
 
+		/*
+		 * Obtiene las celdas de origen y destino de una accion de movimiento.
+		 * Devuelve 0 si la accion no es de movimiento.
+		 */
+
+		static int celdasMovimiento(int index, char **origen, char **destino){
+			Action *a = gop_conn[index].action;
+			int c1 = 0;
+			if ( (!a->norm_operator && !a->pseudo_action) || strcmp(a->name,(char*)ACTION_MOVE) )
+				return 0;
+			while(gconstants[a->name_inst_table[c1]][0] != INIT_CELL)
+				c1++;
+			*origen = gconstants[a->name_inst_table[c1]];
+			*destino = gconstants[a->name_inst_table[c1+1]];
+			return 1;
+		}
+
+		/*
+		 * Annade a un lote la peticion de una accion de movimiento si su valor no esta en la cache.
+		 */
+
+		static void annadirLote(t_cache *cache, int opcion, int index, int *tipos, char **origenes, char **destinos, int *n){
+			char *origen, *destino;
+			if(index < 0 || !celdasMovimiento(index, &origen, &destino))
+				return;
+			add(cache, origen);
+			add(cache, destino);
+			if(getElemento(cache, getIndexHASH(&(cache->hash),origen,cache->dimensiones), getIndexHASH(&(cache->hash),destino,cache->dimensiones)) != NULL)
+				return;
+			tipos[*n] = opcion;
+			origenes[*n] = origen;
+			destinos[*n] = destino;
+			(*n)++;
+		}
+
+		/*
+		 * Solicita en una sola peticion (MENSAJE_LOTE, solo con el protocolo binario) los
+		 * valores que no estan en la cache de las acciones de movimiento de un nodo: el coste
+		 * de la accion del padre, y la heuristica y el coste de cada sucesor. Los valores
+		 * recibidos se guardan en la cache, de donde los obtienen getHeuristica y getCoste.
+		 * Los valores que no se pueden calcular no se guardan y se vuelven a pedir cuando
+		 * se necesitan.
+		 */
+
+		void solicitarSucesores(int padre, int *ops, int num_ops){
+			int *tipos, i, n = 0, lote, k;
+			char **origenes, **destinos;
+			unsigned char *tramas;
+			t_cache *cache;
+			double valor;
+			if(!protocoloBinario())
+				return;
+			tipos = (int *) malloc((2*num_ops+1) * sizeof(int));
+			origenes = (char **) malloc((2*num_ops+1) * sizeof(char *));
+			destinos = (char **) malloc((2*num_ops+1) * sizeof(char *));
+			annadirLote(&costes, MENSAJE_COSTE, padre, tipos, origenes, destinos, &n);
+			for(i = 0; i < num_ops; i++)
+			{
+				annadirLote(&heuristicas, MENSAJE_HEURISTICA, ops[i], tipos, origenes, destinos, &n);
+				annadirLote(&costes, MENSAJE_COSTE, ops[i], tipos, origenes, destinos, &n);
+			}
+			tramas = (unsigned char *) malloc((MAX_LOTE+1) * T_TRAMA);
+			for(i = 0; n > 1 && i < n; i += lote)
+			{
+				lote = (n - i < MAX_LOTE)? n - i : MAX_LOTE;
+				id_peticion++;
+				codificarPeticion(tramas, MENSAJE_LOTE, id_peticion, NULL, NULL);
+				escribirEntero(tramas+8, lote);
+				for(k = 0; k < lote; k++)
+					codificarPeticion(tramas+(k+1)*T_TRAMA, tipos[i+k], k, origenes[i+k], destinos[i+k]);
+				enviarTramas(tramas, (lote+1) * T_TRAMA);
+				recibirTramas(tramas, (lote+1) * T_TRAMA);
+				comprobarRespuesta(tramas, MENSAJE_LOTE, id_peticion);
+				for(k = 0; k < lote; k++)
+				{
+					comprobarRespuesta(tramas+(k+1)*T_TRAMA, tipos[i+k], k);
+					if(leerEntero(tramas+(k+1)*T_TRAMA+8) != RESPUESTA_OK)
+						continue;
+					valor = leerDouble(tramas+(k+1)*T_TRAMA+16);
+					cache = (tipos[i+k] == MENSAJE_COSTE)? &costes : &heuristicas;
+					setElemento(cache,getIndexHASH(&(cache->hash),origenes[i+k],cache->dimensiones),getIndexHASH(&(cache->hash),destinos[i+k],cache->dimensiones), valor);
+					setElemento(cache,getIndexHASH(&(cache->hash),destinos[i+k],cache->dimensiones),getIndexHASH(&(cache->hash),origenes[i+k],cache->dimensiones), valor);
+				}
+			}
+			free(tramas);
+			free(tipos);
+			free(origenes);
+			free(destinos);
+		}
+
 void print_op_name( int index )
 
 {
@@ -877,13 +1140,24 @@ void print_op_name( int index )
 			 * el camino que hay que realizar antes de hacer las tareas del plan.
 			 */
 
-			int opcion;
-			opcion = MENSAJE_CAMINO; 
-			enviarTuberia(fdPipeffAstar, &opcion, sizeof(opcion));
 		    int c1 = 0;
 		    while(gconstants[a->name_inst_table[c1]][0] != INIT_CELL)
 		        c1++;
             fflush(stdout);
+			if(protocoloBinario())
+			{
+				if(enviarPeticion(MENSAJE_CAMINO, gconstants[a->name_inst_table[c1]], gconstants[a->name_inst_table[c1+1]], NULL) != RESPUESTA_OK){
+					printf("\rA estrella no encontro solución a una de las transiciones entre tareas.\n");
+					exit(1);
+				}
+				fflush(stdout);
+				printf("\n");
+				fflush(stdout);
+				return;
+			}
+			int opcion;
+			opcion = MENSAJE_CAMINO; 
+			enviarTuberia(fdPipeffAstar, &opcion, sizeof(opcion));
         	/*printf(" %s", gconstants[a->name_inst_table[i]]);*/
 			char punto[T_PUNTO],conf_punto[T_PUNTO];
 			strcpy(punto,gconstants[a->name_inst_table[c1]]);
@@ -966,5 +1240,8 @@ void print_plan( void )
 			 */
 			int opcion;
 			opcion = MENSAJE_SALIR; 
-			enviarTuberia(fdPipeffAstar, &opcion, sizeof(opcion));
+			if(protocoloBinario())
+				enviarPeticion(MENSAJE_SALIR, NULL, NULL, NULL);
+			else
+				enviarTuberia(fdPipeffAstar, &opcion, sizeof(opcion));
 }
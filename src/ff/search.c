@@ -866,6 +866,10 @@ Bool do_best_first_search( void )
 			    }
 
     get_A( &(first->S) );
+			/*
+			 * Se solicitan juntos los costes y heuristicas de los sucesores que no estan en la cache.
+			 */
+			solicitarSucesores( first->op, gA, gnum_A );
     for ( i = 0; i < gnum_A; i++ ) {
       result_to_dest( &S, &(first->S), gA[i] );
       add_to_bfs_space( &S, gA[i], first );